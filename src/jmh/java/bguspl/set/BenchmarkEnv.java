@@ -0,0 +1,37 @@
+package bguspl.set;
+
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Builds game environments for the benchmarks: silent logger, no user interface, no table delays.
+ */
+public class BenchmarkEnv {
+
+    public static Env create(int featureSize, int featureCount, int rows, int columns, int players) {
+        return create(featureSize, featureCount, rows, columns, players, new Properties());
+    }
+
+    /**
+     * @param settings - more settings (they override the defaults of the benchmarks).
+     */
+    public static Env create(int featureSize, int featureCount, int rows, int columns, int players, Properties settings) {
+        Properties properties = new Properties();
+        properties.put("LogLevel", "OFF");
+        properties.put("FeatureSize", Integer.toString(featureSize));
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        properties.put("Rows", Integer.toString(rows));
+        properties.put("Columns", Integer.toString(columns));
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", Integer.toString(players));
+        properties.put("TableDelaySeconds", "0");
+        properties.put("PlayerKeys1", "");
+        properties.put("PlayerKeys2", "");
+        properties.putAll(settings);
+        Logger logger = Logger.getAnonymousLogger();
+        logger.setLevel(Level.OFF);
+        Config config = new Config(logger, properties);
+        return new Env(logger, config, new NullUserInterface(), new UtilImpl(config));
+    }
+}
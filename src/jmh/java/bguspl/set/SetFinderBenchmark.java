@@ -0,0 +1,76 @@
+package bguspl.set;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How the set search scales with the deck size (featureSize ^ featureCount cards, up to 19683 and 16384), searching
+ * the whole shuffled deck sequentially and split across the fork-join pool.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SetFinderBenchmark {
+
+    /**
+     * featureSize x featureCount.
+     */
+    @Param({"3x4", "3x6", "3x8", "3x9", "4x4", "4x5", "4x7", "5x4"})
+    String variant;
+
+    /**
+     * The ParallelSearchCards setting (0 for a sequential search).
+     */
+    @Param({"0", "1024"})
+    int parallelSearchCards;
+
+    private Util util;
+    private int[] deck;
+
+    @Setup
+    public void setUp() {
+        String[] sizes = variant.split("x");
+        Properties settings = new Properties();
+        settings.put("ParallelSearchCards", Integer.toString(parallelSearchCards));
+        Env env = BenchmarkEnv.create(Integer.parseInt(sizes[0]), Integer.parseInt(sizes[1]), 3, 4, 2, settings);
+        util = env.util;
+
+        SplittableRandom random = new SplittableRandom(42);
+        deck = new int[env.config.deckSize];
+        for (int i = 0; i < deck.length; i++)
+            deck[i] = i;
+        for (int i = deck.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int card = deck[i];
+            deck[i] = deck[j];
+            deck[j] = card;
+        }
+    }
+
+    @Benchmark
+    public List<int[]> firstSet() {
+        return util.findSets(deck, deck.length, 1);
+    }
+
+    @Benchmark
+    public List<int[]> first1000Sets() {
+        return util.findSets(deck, deck.length, 1000);
+    }
+}
@@ -0,0 +1,103 @@
+package bguspl.set;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the set tests and searches in UtilImpl.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UtilBenchmark {
+
+    @Param({"3", "4"})
+    int featureSize;
+
+    @Param({"3", "4", "5"})
+    int featureCount;
+
+    /**
+     * The number of cards on the table.
+     */
+    @Param({"12", "21"})
+    int tableSize;
+
+    private Util util;
+    private int[] deck;
+    private int[] table;
+    private int[][] candidates;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Env env = BenchmarkEnv.create(featureSize, featureCount, 3, 4, 2);
+        util = env.util;
+        SplittableRandom random = new SplittableRandom(42);
+
+        deck = new int[env.config.deckSize];
+        for (int i = 0; i < deck.length; i++)
+            deck[i] = i;
+        for (int i = deck.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int card = deck[i];
+            deck[i] = deck[j];
+            deck[j] = card;
+        }
+        table = Arrays.copyOf(deck, Math.min(tableSize, deck.length));
+
+        candidates = new int[1024][featureSize];
+        for (int[] candidate : candidates)
+            for (int i = 0; i < featureSize; i++)
+                candidate[i] = random.nextInt(deck.length);
+    }
+
+    @Benchmark
+    public boolean testSet() {
+        next = (next + 1) & (candidates.length - 1);
+        return util.testSet(candidates[next]);
+    }
+
+    @Benchmark
+    public int completeSet() {
+        next = (next + 1) & (candidates.length - 1);
+        return util.completeSet(candidates[next][0], candidates[next][1]);
+    }
+
+    @Benchmark
+    public List<int[]> findSetsOnTable() {
+        return util.findSets(table, table.length, Integer.MAX_VALUE);
+    }
+
+    @Benchmark
+    public List<int[]> findFirstSetInDeck() {
+        return util.findSets(deck, deck.length, 1);
+    }
+
+    @Benchmark
+    public boolean containsSetInDeck() {
+        return util.containsSet(deck, deck.length);
+    }
+
+    @Benchmark
+    public boolean containsSetOnTable() {
+        return util.containsSet(table, table.length);
+    }
+}
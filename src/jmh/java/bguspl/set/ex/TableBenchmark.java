@@ -0,0 +1,78 @@
+package bguspl.set.ex;
+
+import bguspl.set.BenchmarkEnv;
+import bguspl.set.Env;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the table operations on the players' and the dealer's hot paths.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TableBenchmark {
+
+    @Param({"3", "4"})
+    int featureSize;
+
+    @Param({"4", "5"})
+    int featureCount;
+
+    /**
+     * The number of columns of the table grid (with 3 rows).
+     */
+    @Param({"4", "7"})
+    int columns;
+
+    private Env env;
+    private Table table;
+    private int[] claim;
+    private int[] cards;
+    private int slot;
+
+    @Setup
+    public void setUp() {
+        env = BenchmarkEnv.create(featureSize, featureCount, 3, columns, 2);
+        table = new Table(env);
+        for (int slot = 0; slot < env.config.tableSize; slot++)
+            table.placeCard(slot, slot);
+
+        // player 1 holds a claim on the first featureSize slots
+        claim = new int[featureSize];
+        cards = new int[featureSize];
+        for (int i = 0; i < featureSize; i++) {
+            claim[i] = i;
+            table.placeToken(1, i);
+        }
+    }
+
+    @Benchmark
+    public boolean placeAndRemoveToken() {
+        slot = (slot + 1) % env.config.tableSize;
+        table.placeToken(0, slot);
+        return table.removeToken(0, slot);
+    }
+
+    /**
+     * The work of the dealer's verdict on a claim: a consistent snapshot of the claimed slots and a set test.
+     */
+    @Benchmark
+    public boolean judgeClaim() {
+        return table.snapshotClaim(1, claim, cards) && env.util.testSet(cards);
+    }
+}
@@ -0,0 +1,145 @@
+package bguspl.set;
+
+/**
+ * Precomputed feature tables of all the cards in the deck (built once from the configuration).
+ * <p>
+ * Besides the plain features matrix, every card is encoded as a one-hot bit pattern: each feature takes
+ * featureSize bits, exactly one of which is set (the bit of the feature's value). This lets testSet decide a
+ * candidate set with a few bitwise operations per feature and no allocations. The packed encoding is only available
+ * when featureSize * featureCount <= 64; otherwise testSet falls back to comparing the features matrix entries.
+ */
+public class CardCodec {
+
+    /**
+     * The number of features on the cards.
+     */
+    public final int featureCount;
+
+    /**
+     * The number of choices for each feature.
+     */
+    public final int featureSize;
+
+    /**
+     * The total number of cards in the deck.
+     */
+    public final int deckSize;
+
+    /**
+     * The features of each card (features[card][feature]).
+     */
+    private final int[][] features;
+
+    /**
+     * The value of each feature digit in a card id (i.e. featureSize ^ (featureCount - 1 - feature)).
+     */
+    private final int[] weights;
+
+    /**
+     * The one-hot encoding of each card (null if the encoding does not fit in a long).
+     */
+    private final long[] packed;
+
+    /**
+     * A mask of the bits of a single feature in the packed encoding.
+     */
+    private final long fieldMask;
+
+    public CardCodec(Config config) {
+        this(config.featureSize, config.featureCount);
+    }
+
+    public CardCodec(int featureSize, int featureCount) {
+        this.featureSize = featureSize;
+        this.featureCount = featureCount;
+        this.deckSize = (int) Math.pow(featureSize, featureCount);
+
+        weights = new int[featureCount];
+        for (int i = featureCount - 1, weight = 1; i >= 0; --i, weight *= featureSize)
+            weights[i] = weight;
+
+        features = new int[deckSize][featureCount];
+        for (int card = 0; card < deckSize; ++card)
+            for (int i = 0; i < featureCount; ++i)
+                features[card][i] = card / weights[i] % featureSize;
+
+        if ((long) featureSize * featureCount <= Long.SIZE) {
+            fieldMask = featureSize == Long.SIZE ? -1L : (1L << featureSize) - 1;
+            packed = new long[deckSize];
+            for (int card = 0; card < deckSize; ++card)
+                for (int i = 0; i < featureCount; ++i)
+                    packed[card] |= 1L << (i * featureSize + features[card][i]);
+        } else {
+            fieldMask = 0;
+            packed = null;
+        }
+    }
+
+    /**
+     * @param card    - the card id.
+     * @param feature - the feature index.
+     * @return - the value of the feature of the card.
+     */
+    public int feature(int card, int feature) {
+        return features[card][feature];
+    }
+
+    /**
+     * @param feature - the feature index.
+     * @return - the value of a feature digit in a card id.
+     */
+    public int weight(int feature) {
+        return weights[feature];
+    }
+
+    /**
+     * Copies the features of a card into an array.
+     *
+     * @param card - the card id.
+     * @param out  - an array of at least featureCount entries.
+     */
+    public void copyFeatures(int card, int[] out) {
+        System.arraycopy(features[card], 0, out, 0, featureCount);
+    }
+
+    /**
+     * Checks if an array of cards forms a legal set, i.e. each feature is either the same in all the cards or
+     * different in all the cards.
+     *
+     * @param cards - the array of cards.
+     * @return - true iff the array forms a legal set.
+     */
+    public boolean testSet(int[] cards) {
+        int n = cards.length;
+        if (n < 2) return false; // a single card is both "same" and "different"
+        if (packed == null) return testSetUnpacked(cards);
+
+        long any = 0, all = -1L;
+        for (int card : cards) {
+            any |= packed[card];
+            all &= packed[card];
+        }
+
+        // the bits that some but not all the cards have: none if the feature is the same in all the cards,
+        // exactly n (one per card) if it is different in all of them
+        long differ = any ^ all;
+        for (int i = 0; i < featureCount; ++i) {
+            long field = (differ >>> (i * featureSize)) & fieldMask;
+            if (field != 0 && Long.bitCount(field) != n) return false;
+        }
+        return true;
+    }
+
+    private boolean testSetUnpacked(int[] cards) {
+        for (int i = 0; i < featureCount; ++i) {
+            boolean sameSame = true, butDifferent = true;
+            for (int j = 0; j < cards.length && (sameSame || butDifferent); ++j)
+                for (int k = j + 1; k < cards.length; ++k) {
+                    if (features[cards[j]][i] == features[cards[k]][i]) butDifferent = false;
+                    else sameSame = false;
+                }
+            if (sameSame == butDifferent) return false;
+        }
+        return true;
+    }
+}
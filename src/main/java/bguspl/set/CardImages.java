@@ -0,0 +1,127 @@
+package bguspl.set;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URL;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+import java.util.logging.Logger;
+
+/**
+ * The card images of the user interface, decoded in the background.
+ * <p>
+ * A few daemon threads decode all the card images with ImageIO, in deck order. A card that is needed before its
+ * turn (get returned null) moves to the front of the queue. Nothing waits for the images: the caller draws a
+ * placeholder and is told (on a decoder thread) when the image is ready.
+ */
+class CardImages {
+
+    private static final int NEW = 0, DECODING = 1, DONE = 2, FAILED = 3;
+
+    private final Logger logger;
+    private final Config config;
+
+    /**
+     * Called with the card id when its image is ready (on a decoder thread).
+     */
+    private final IntConsumer onLoaded;
+
+    private final AtomicReferenceArray<BufferedImage> images;
+    private final AtomicIntegerArray states;
+
+    /**
+     * The cards to decode (urgent cards are added first, so a card may appear more than once).
+     */
+    private final LinkedBlockingDeque<Integer> pending = new LinkedBlockingDeque<>();
+
+    private final BufferedImage emptyCard;
+    private final Thread[] decoders;
+    private final AtomicInteger decoded = new AtomicInteger();
+    private final long startNanos = System.nanoTime();
+
+    CardImages(Logger logger, Config config, IntConsumer onLoaded) {
+        this.logger = logger;
+        this.config = config;
+        this.onLoaded = onLoaded;
+        assert config.featureSize < 10; // otherwise there will be naming conflicts
+
+        images = new AtomicReferenceArray<>(config.deckSize);
+        states = new AtomicIntegerArray(config.deckSize);
+        emptyCard = decode("cards/empty_card.png");
+
+        for (int card = 0; card < config.deckSize; card++)
+            pending.addLast(card);
+        decoders = new Thread[Math.min(4, Runtime.getRuntime().availableProcessors())];
+        for (int i = 0; i < decoders.length; i++) {
+            decoders[i] = new Thread(this::decodePending, "card-images-" + i);
+            decoders[i].setDaemon(true);
+            decoders[i].start();
+        }
+    }
+
+    /**
+     * @return - the image of an empty slot.
+     */
+    BufferedImage empty() {
+        return emptyCard;
+    }
+
+    /**
+     * @param card - the card id.
+     * @return - the image of the card, or null if it is not decoded yet (it is then decoded next).
+     */
+    BufferedImage get(int card) {
+        BufferedImage image = images.get(card);
+        if (image == null && states.get(card) == NEW)
+            pending.addFirst(card);
+        return image;
+    }
+
+    /**
+     * Stops the decoders.
+     */
+    void shutdown() {
+        for (Thread decoder : decoders)
+            decoder.interrupt();
+    }
+
+    /**
+     * The main loop of a decoder thread: decodes cards until there are none left.
+     */
+    private void decodePending() {
+        Integer card;
+        while (!Thread.currentThread().isInterrupted() && (card = pending.pollFirst()) != null) {
+            if (!states.compareAndSet(card, NEW, DECODING)) continue; // a duplicate of an urgent card
+            try {
+                images.set(card, decode("cards/" + UserInterfaceSwing.intInBaseToPaddedString(card, config.featureCount, config.featureSize) + ".png"));
+                states.set(card, DONE);
+                onLoaded.accept(card);
+            } catch (RuntimeException e) {
+                states.set(card, FAILED);
+                logger.severe("cannot load the image of card " + card + ": " + e.getMessage());
+            }
+            if (decoded.incrementAndGet() == config.deckSize)
+                logger.info("decoded " + config.deckSize + " card images in "
+                        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos) + "ms on " + decoders.length
+                        + " threads.");
+        }
+    }
+
+    private static BufferedImage decode(String filename) {
+        URL resource = CardImages.class.getClassLoader().getResource(filename);
+        try {
+            if (resource == null) throw new FileNotFoundException(filename);
+            BufferedImage image = ImageIO.read(resource);
+            if (image == null) throw new IOException("unsupported image format: " + filename);
+            return image;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package bguspl.set;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The source of game time. All game timings (countdown, freezes, table delays) are measured in clock time, which
+ * may run faster than the wall clock (see ScaledClock).
+ */
+public interface Clock {
+
+    /**
+     * @return - the current clock time in milliseconds.
+     */
+    long millis();
+
+    /**
+     * Converts a duration in clock time to the real time a thread should block for.
+     *
+     * @param millis - the duration in clock milliseconds.
+     * @return - the duration in real nanoseconds.
+     */
+    long toRealNanos(long millis);
+
+    /**
+     * Blocks the calling thread for a duration in clock time. The thread is parked, so a virtual thread releases
+     * its carrier while it sleeps.
+     *
+     * @param millis - the duration in clock milliseconds.
+     * @throws InterruptedException - if the thread is interrupted while sleeping.
+     */
+    default void sleep(long millis) throws InterruptedException {
+        long nanos = toRealNanos(millis);
+        long deadline = System.nanoTime() + nanos;
+        while (nanos > 0) {
+            LockSupport.parkNanos(this, nanos); // may return early (e.g. unpark), so park until the deadline
+            if (Thread.interrupted()) throw new InterruptedException();
+            nanos = deadline - System.nanoTime();
+        }
+    }
+}
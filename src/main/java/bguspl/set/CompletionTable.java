@@ -0,0 +1,122 @@
+package bguspl.set;
+
+/**
+ * The card that completes each pair of distinct cards to a legal set, for featureSize 3 (where a pair of cards
+ * determines its set).
+ * <p>
+ * In each feature, the completing card has the value that makes the three values sum to 0 mod 3. So the completion
+ * only depends on the digits of the two card ids, and the digits of a card id can be split into groups that are
+ * completed separately. The completions of the high and the low featureCount / 2 digits are precomputed (two small
+ * tables), and if a deckSize x deckSize table of all the completions fits in the memory budget it is filled from
+ * them (in bytes for decks of up to 256 cards, in shorts for decks of up to 32768 cards). A completion is then a
+ * single lookup, or two lookups and a division for larger decks. If not even the digit group tables fit, the
+ * completion is computed feature by feature.
+ */
+final class CompletionTable {
+
+    private final CardCodec codec;
+    private final int deckSize;
+
+    /**
+     * The completions of all the pairs (completions[a * deckSize + b]) in bytes or shorts, or both null.
+     */
+    private final byte[] byteCompletions;
+    private final short[] shortCompletions;
+
+    /**
+     * The number of values of the low digit group and of the high digit group of a card id.
+     */
+    private final int lowCards;
+    private final int highCards;
+
+    /**
+     * The completions of the low digit groups (lowCompletions[a * lowCards + b]) and of the high digit groups, already
+     * multiplied by lowCards (both null if they do not fit in the budget).
+     */
+    private final int[] lowCompletions;
+    private final int[] highCompletions;
+
+    /**
+     * @param codec       - the feature tables of the cards (featureSize 3).
+     * @param budgetBytes - the most memory the tables may take.
+     */
+    CompletionTable(CardCodec codec, long budgetBytes) {
+        if (codec.featureSize != 3)
+            throw new IllegalArgumentException("pairs do not complete sets of " + codec.featureSize + " cards");
+        this.codec = codec;
+        this.deckSize = codec.deckSize;
+        this.lowCards = (int) Math.pow(3, codec.featureCount / 2);
+        this.highCards = deckSize / lowCards;
+
+        long groupBytes = ((long) lowCards * lowCards + (long) highCards * highCards) * Integer.BYTES;
+        if (groupBytes > budgetBytes) {
+            lowCompletions = highCompletions = null;
+            byteCompletions = null;
+            shortCompletions = null;
+            return;
+        }
+        lowCompletions = new int[lowCards * lowCards];
+        for (int a = 0; a < lowCards; ++a)
+            for (int b = 0; b < lowCards; ++b)
+                lowCompletions[a * lowCards + b] = computeDigits(a, b);
+        highCompletions = new int[highCards * highCards];
+        for (int a = 0; a < highCards; ++a)
+            for (int b = 0; b < highCards; ++b)
+                highCompletions[a * highCards + b] = computeDigits(a, b) * lowCards;
+
+        int entryBytes = deckSize <= 256 ? Byte.BYTES : Short.BYTES;
+        boolean full = deckSize <= 32768 && (long) deckSize * deckSize * entryBytes + groupBytes <= budgetBytes;
+        byteCompletions = full && entryBytes == Byte.BYTES ? new byte[deckSize * deckSize] : null;
+        shortCompletions = full && entryBytes == Short.BYTES ? new short[deckSize * deckSize] : null;
+        for (int a = 0; full && a < deckSize; ++a)
+            for (int b = 0; b < deckSize; ++b) {
+                int third = lookupGroups(a, b);
+                if (byteCompletions != null) byteCompletions[a * deckSize + b] = (byte) third;
+                else shortCompletions[a * deckSize + b] = (short) third;
+            }
+    }
+
+    /**
+     * @return - the card that completes a pair of distinct cards to a legal set (for the same card, the card itself).
+     */
+    int third(int a, int b) {
+        if (byteCompletions != null) return byteCompletions[a * deckSize + b] & 0xFF;
+        if (shortCompletions != null) return shortCompletions[a * deckSize + b];
+        if (lowCompletions != null) return lookupGroups(a, b);
+        return compute(a, b);
+    }
+
+    /**
+     * @return - the memory the tables take, in bytes.
+     */
+    long bytes() {
+        long bytes = 0;
+        if (byteCompletions != null) bytes += byteCompletions.length;
+        if (shortCompletions != null) bytes += (long) shortCompletions.length * Short.BYTES;
+        if (lowCompletions != null) bytes += (long) (lowCompletions.length + highCompletions.length) * Integer.BYTES;
+        return bytes;
+    }
+
+    private int lookupGroups(int a, int b) {
+        int highA = a / lowCards, highB = b / lowCards;
+        return highCompletions[highA * highCards + highB]
+                + lowCompletions[(a - highA * lowCards) * lowCards + b - highB * lowCards];
+    }
+
+    private int compute(int a, int b) {
+        int card = 0;
+        for (int f = 0; f < codec.featureCount; ++f)
+            card += (6 - codec.feature(a, f) - codec.feature(b, f)) % 3 * codec.weight(f);
+        return card;
+    }
+
+    /**
+     * Completes two numbers digit by digit in base 3.
+     */
+    private static int computeDigits(int a, int b) {
+        int third = 0;
+        for (int weight = 1; a > 0 || b > 0; a /= 3, b /= 3, weight *= 3)
+            third += (6 - a % 3 - b % 3) % 3 * weight;
+        return third;
+    }
+}
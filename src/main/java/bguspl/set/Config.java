@@ -15,6 +15,47 @@ import java.util.logging.Logger;
  */
 public class Config {
 
+    /**
+     * The level of each category of game events (LogLevel + the category key, LogLevel by default)
+     */
+    private final Level[] logLevels;
+
+    /**
+     * The format of a log line (String.format with the time, the level, the message and the thread name)
+     */
+    public final String logFormat;
+
+    /**
+     * The file to record the binary journal of the game to (empty for none)
+     */
+    public final String journalFile;
+
+    /**
+     * The journal file to replay instead of playing a game (empty for a normal game)
+     */
+    public final String replayFile;
+
+    /**
+     * How many times faster than it was played a journal is replayed
+     */
+    public final double replaySpeedup;
+
+    /**
+     * The file to append snapshots of the engine metrics to (empty for none), and the time between snapshots
+     */
+    public final String metricsFile;
+    public final long metricsDumpMillis;
+
+    /**
+     * Whether to expose the engine metrics as a JMX MBean
+     */
+    public final boolean metricsJmx;
+
+    /**
+     * The seed of the game's random streams (the same seed deals the same cards and makes the same computer moves)
+     */
+    public final long seed;
+
     /**
      * Random spin cycles for Config::randomSpin (for debugging / testing)
      */
@@ -46,6 +87,20 @@ public class Config {
      */
     public final int computerPlayers;
 
+    /**
+     * How the computer players play: random, perfect or human, in lower case (see bguspl.set.ex.PlayerStrategy)
+     */
+    public final String computerStrategy;
+
+    /**
+     * The human strategy's reaction time to spot a set (mean and standard deviation), delay between key presses and
+     * rate of wrong key presses
+     */
+    public final long computerReactionMillis;
+    public final long computerReactionDeviationMillis;
+    public final long computerKeyMillis;
+    public final double computerErrorRate;
+
     /**
      * The total number of players (human + computer) in the game
      */
@@ -86,6 +141,46 @@ public class Config {
      */
     public final long endGamePauseMillies;
 
+    /**
+     * True iff the game tasks run on virtual threads (ThreadMode=virtual, needs Java 21), false for platform threads
+     */
+    public final boolean virtualThreads;
+
+    /**
+     * The stack size of the platform threads running the game tasks in bytes (0 for the JVM default)
+     */
+    public final long threadStackBytes;
+
+    /**
+     * The least number of cards for which a set search is split across the common fork-join pool (0 for never)
+     */
+    public final int parallelSearchCards;
+
+    /**
+     * The most memory in bytes the precomputed completions of pairs of cards (for FeatureSize 3) may take
+     */
+    public final long completionTableBytes;
+
+    /**
+     * The number of games to play in headless simulation mode (0 for a normal interactive game)
+     */
+    public final int simulationGames;
+
+    /**
+     * How many times faster than the wall clock the game clock runs in simulation mode
+     */
+    public final double simulationSpeedup;
+
+    /**
+     * The number of games simulated at the same time
+     */
+    public final int simulationThreads;
+
+    /**
+     * The number of bytes the tasks of a hosted game may allocate before the game is failed (0 for no limit)
+     */
+    public final long roomAllocationLimitBytes;
+
     /**
      * The names of the players to display on the screen
      * Note: if there are more players than names, the remaining players will be called "Player 3", "Player 4", etc.
@@ -155,7 +250,7 @@ public class Config {
      * @param filename - the name of the configuration file.
      * @return - a properties object with the configuration file contents.
      */
-    private static Properties loadProperties(String filename, Logger logger) {
+    static Properties loadProperties(String filename, Logger logger) {
 
         Properties properties = new Properties();
 
@@ -183,11 +278,24 @@ public class Config {
     public Config(Logger logger, Properties properties) {
 
         // logger settings
-        Level logLevel = Level.parse(properties.getProperty("LogLevel", "ALL"));
-        String logFormat = properties.getProperty("LogFormat", "[%1$tT.%1$tL] [%2$-7s] %3$s%n");
-        Main.setLoggerLevelAndFormat(logger, logLevel, logFormat);
+        String logLevel = properties.getProperty("LogLevel", "ALL");
+        logFormat = properties.getProperty("LogFormat", "[%1$tT.%1$tL] [%2$-7s] %3$s%n");
+        Main.setLoggerLevelAndFormat(logger, Level.parse(logLevel), logFormat);
+        logLevels = new Level[GameLog.Category.values().length];
+        for (GameLog.Category category : GameLog.Category.values())
+            logLevels[category.ordinal()] = Level.parse(properties.getProperty("LogLevel" + category.key, logLevel));
+        journalFile = properties.getProperty("JournalFile", "").trim();
+        replayFile = properties.getProperty("ReplayFile", "").trim();
+        replaySpeedup = Double.parseDouble(properties.getProperty("ReplaySpeedup", "1"));
+        if (replaySpeedup <= 0) logger.severe("invalid replay speedup: " + replaySpeedup);
+        metricsFile = properties.getProperty("MetricsFile", "").trim();
+        metricsDumpMillis = (long) (Double.parseDouble(properties.getProperty("MetricsDumpSeconds", "10")) * 1000.0);
+        if (metricsDumpMillis <= 0) logger.severe("invalid metrics dump period: " + metricsDumpMillis + "ms");
+        metricsJmx = Boolean.parseBoolean(properties.getProperty("MetricsJmx", "False"));
 
         // for debugging
+        String seedValue = properties.getProperty("Seed", "").trim();
+        seed = seedValue.isEmpty() ? System.nanoTime() ^ System.currentTimeMillis() : Long.parseLong(seedValue);
         randomSpinMin = Long.parseLong(properties.getProperty("RandomSpinMin", "0"));
         randomSpinMax = Long.parseLong(properties.getProperty("RandomSpinMax", "0"));
         if (randomSpinMax < randomSpinMin || randomSpinMin < 0)
@@ -202,6 +310,20 @@ public class Config {
         humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
         computerPlayers = Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
         players = humanPlayers + computerPlayers;
+        String strategy = properties.getProperty("ComputerStrategy", "random").trim().toLowerCase();
+        if (!strategy.equals("random") && !strategy.equals("perfect") && !strategy.equals("human")) {
+            logger.severe("invalid computer strategy: " + strategy + " (expected random, perfect or human), using random.");
+            strategy = "random";
+        }
+        computerStrategy = strategy;
+        computerReactionMillis = (long) (Double.parseDouble(properties.getProperty("ComputerReactionSeconds", "2")) * 1000.0);
+        computerReactionDeviationMillis = (long) (Double.parseDouble(properties.getProperty("ComputerReactionDeviationSeconds", "1")) * 1000.0);
+        computerKeyMillis = (long) (Double.parseDouble(properties.getProperty("ComputerKeySeconds", "0.3")) * 1000.0);
+        computerErrorRate = Double.parseDouble(properties.getProperty("ComputerErrorRate", "0.05"));
+        if (computerReactionMillis < 0 || computerReactionDeviationMillis < 0 || computerKeyMillis < 0
+                || computerErrorRate < 0 || computerErrorRate > 1)
+            logger.severe("invalid computer player settings: reaction: " + computerReactionMillis + "ms deviation: "
+                    + computerReactionDeviationMillis + "ms key: " + computerKeyMillis + "ms error rate: " + computerErrorRate);
 
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
@@ -211,6 +333,25 @@ public class Config {
         tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
         endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
 
+        // threading settings
+        String threadMode = properties.getProperty("ThreadMode", "platform").trim();
+        virtualThreads = threadMode.equalsIgnoreCase("virtual");
+        if (!virtualThreads && !threadMode.equalsIgnoreCase("platform"))
+            logger.severe("invalid thread mode: " + threadMode + " (expected platform or virtual), using platform.");
+        threadStackBytes = Long.parseLong(properties.getProperty("ThreadStackKilobytes", "0")) * 1024;
+        parallelSearchCards = Integer.parseInt(properties.getProperty("ParallelSearchCards", "1024"));
+        completionTableBytes = Long.parseLong(properties.getProperty("CompletionTableKilobytes", "16384")) * 1024;
+
+        // simulation settings
+        simulationGames = Integer.parseInt(properties.getProperty("SimulationGames", "0"));
+        simulationSpeedup = Double.parseDouble(properties.getProperty("SimulationSpeedup", "1000"));
+        simulationThreads = Integer.parseInt(properties.getProperty("SimulationThreads",
+                Integer.toString(8 * Runtime.getRuntime().availableProcessors())));
+        roomAllocationLimitBytes = (long) (Double.parseDouble(properties.getProperty("RoomAllocationLimitMegabytes", "0")) * 1024 * 1024);
+        if (simulationGames < 0 || simulationSpeedup <= 0 || simulationThreads <= 0)
+            logger.severe("invalid simulation settings: games: " + simulationGames + " speedup: " + simulationSpeedup
+                    + " threads: " + simulationThreads);
+
         // ui settings
         String[] names = properties.getProperty("PlayerNames", "Player 1, Player 2").split(",");
         playerNames = new String[players];
@@ -241,6 +382,14 @@ public class Config {
         }
     }
 
+    /**
+     * @param category - a category of game events.
+     * @return - the log level of the category.
+     */
+    public Level logLevel(GameLog.Category category) {
+        return logLevels[category.ordinal()];
+    }
+
     public int[] playerKeys(int player) {
         return playerKeys[player];
     }
@@ -1,5 +1,7 @@
 package bguspl.set;
 
+import java.util.SplittableRandom;
+import java.util.concurrent.Executor;
 import java.util.logging.Logger;
 
 public class Env {
@@ -8,11 +10,150 @@ public class Env {
     public final Config config;
     public final UserInterface ui;
     public final Util util;
+    public final Clock clock;
 
+    /**
+     * Runs the game's tasks (the dealer, the players and the AI key press generators). Every task blocks for the
+     * whole game, so the executor must have a thread for each of them.
+     */
+    public final Executor executor;
+
+    /**
+     * Records the game events (Journal.NONE if the game is not journaled).
+     */
+    public final Journal journal;
+
+    /**
+     * The engine metrics (Metrics.NONE if they are not recorded).
+     */
+    public final Metrics metrics;
+
+    /**
+     * The seed of the game's random streams (see random()).
+     */
+    public final long seed;
+
+    /**
+     * The root of the game's random streams, split once per component.
+     */
+    private final SplittableRandom random;
+
+    /**
+     * An environment with the defaults of the builder for everything but its required parts.
+     */
     public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(builder(logger, config, ui, util));
+    }
+
+    private Env(Builder builder) {
+        this(builder.logger, builder.config, builder.ui, builder.util, builder.clock, builder.executor, builder.journal,
+                builder.seed, builder.metrics);
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, Clock clock, Executor executor, Journal journal,
+               long seed, Metrics metrics) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.clock = clock;
+        this.executor = executor;
+        this.journal = journal;
+        this.seed = seed;
+        this.metrics = metrics;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Starts building an environment from its required parts. The other parts default to: a real time clock, a new
+     * thread per task (see GameThreads), no journal, the configured seed and no metrics.
+     */
+    public static Builder builder(Logger logger, Config config, UserInterface ui, Util util) {
+        return new Builder(logger, config, ui, util);
+    }
+
+    /**
+     * Builds an environment, for callers that set some of its optional parts only.
+     */
+    public static final class Builder {
+
+        private final Logger logger;
+        private final Config config;
+        private final UserInterface ui;
+        private final Util util;
+        private Clock clock;
+        private Executor executor;
+        private Journal journal = Journal.NONE;
+        private long seed;
+        private Metrics metrics = Metrics.NONE;
+
+        private Builder(Logger logger, Config config, UserInterface ui, Util util) {
+            this.logger = logger;
+            this.config = config;
+            this.ui = ui;
+            this.util = util;
+            this.clock = new ScaledClock(1);
+            this.executor = new GameThreads(config, logger)::start;
+            this.seed = config.seed;
+        }
+
+        public Builder clock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        public Builder journal(Journal journal) {
+            this.journal = journal;
+            return this;
+        }
+
+        public Builder seed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public Builder metrics(Metrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public Env build() {
+            return new Env(this);
+        }
+    }
+
+    /**
+     * Creates the random stream of a game component (the deck, the dealer's card placement, each player). The
+     * streams depend only on the seed and the order they are created in, so components should create them while the
+     * game is set up (in their constructors) rather than on their own threads.
+     *
+     * @return - a new random stream, independent of the others.
+     */
+    public synchronized SplittableRandom random() {
+        return random.split();
+    }
+
+    /**
+     * Runs a game task on the executor, under the given thread name for the duration of the task.
+     *
+     * @param name - the thread name of the task.
+     * @param task - the task.
+     */
+    public void execute(String name, Runnable task) {
+        executor.execute(() -> {
+            Thread thread = Thread.currentThread();
+            String previous = thread.getName();
+            thread.setName(name);
+            try {
+                task.run();
+            } finally {
+                thread.setName(previous);
+            }
+        });
     }
 }
@@ -0,0 +1,339 @@
+package bguspl.set;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * An asynchronous game event log.
+ * <p>
+ * Logging threads only copy the event (a message template and up to three long arguments) into a preallocated
+ * entry of a ring buffer; a background writer thread formats the entries and writes them to a buffered file. If the
+ * ring is full the event is dropped (and counted) rather than blocking the game. Each category of events has its
+ * own level, so disabled events cost a single comparison.
+ * <p>
+ * The ring is a multi-producer single-consumer queue: a producer claims a sequence number with a CAS on next (only if
+ * the entry of that number was already consumed), fills the entry and publishes it by writing the entry's sequence
+ * last. The writer consumes entries in sequence order, waiting for each one to be published.
+ * <p>
+ * java.util.logging records can be written to the same file through handler().
+ */
+public class GameLog {
+
+    /**
+     * The categories of game events, each with its own level (LogLevel + the category key in config.properties).
+     */
+    public enum Category {
+        /**
+         * General messages (the java.util.logging logger).
+         */
+        GAME("Game"),
+        /**
+         * User interface calls.
+         */
+        UI("Ui"),
+        /**
+         * Key presses.
+         */
+        INPUT("Input");
+
+        public final String key;
+
+        Category(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * A ring buffer entry.
+     */
+    private static final class Entry {
+
+        /**
+         * The sequence number of the event in the entry + 1 (0 while the entry was never used), written last.
+         */
+        private volatile long published;
+
+        private long millis;
+        private String thread;
+        private Level level;
+        private String template;
+        private int argCount;
+        private long a, b, c;
+        private LogRecord record;
+    }
+
+    private static final String DEFAULT_FORMAT = "[%1$tT.%1$tL] [%2$-7s] %3$s%n";
+
+    private final Entry[] ring;
+    private final int mask;
+
+    /**
+     * The next sequence number to claim, and the next one the writer consumes.
+     */
+    private final AtomicLong next = new AtomicLong();
+    private volatile long consumed;
+
+    /**
+     * The sequence number up to which the events were written and flushed.
+     */
+    private volatile long flushed;
+    private volatile long flushRequested;
+
+    private final LongAdder dropped = new LongAdder();
+
+    /**
+     * The level of each category (as Level.intValue()).
+     */
+    private final int[] levels = new int[Category.values().length];
+
+    /**
+     * The line format (String.format with the time in millis, the level, the message and the thread name).
+     */
+    private volatile String format = DEFAULT_FORMAT;
+
+    private final Writer out;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Used by the writer thread only.
+     */
+    private final StringBuilder message = new StringBuilder();
+
+    /**
+     * @param file     - the log file (overwritten).
+     * @param capacity - the number of entries in the ring buffer (rounded up to a power of 2).
+     * @throws IOException - if the file cannot be opened.
+     */
+    public GameLog(Path file, int capacity) throws IOException {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        ring = new Entry[size];
+        for (int i = 0; i < size; i++)
+            ring[i] = new Entry();
+        mask = size - 1;
+        Arrays.fill(levels, Level.ALL.intValue());
+
+        out = new BufferedWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8), 1 << 16);
+        writer = new Thread(this::write, "game-log");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "game-log-shutdown"));
+    }
+
+    /**
+     * Sets the level of a category.
+     */
+    public void setLevel(Category category, Level level) {
+        levels[category.ordinal()] = level.intValue();
+    }
+
+    /**
+     * Sets the levels of all the categories and the line format from the configuration.
+     */
+    public void configure(Config config) {
+        for (Category category : Category.values())
+            setLevel(category, config.logLevel(category));
+        setFormat(config.logFormat);
+    }
+
+    /**
+     * Sets the line format (see the LogFormat setting).
+     */
+    public void setFormat(String format) {
+        this.format = format;
+    }
+
+    /**
+     * @return - true iff events of the category at the level are logged.
+     */
+    public boolean isLoggable(Category category, Level level) {
+        return level.intValue() >= levels[category.ordinal()] && levels[category.ordinal()] != Level.OFF.intValue();
+    }
+
+    /**
+     * Logs an event. Each "{}" in the template is replaced by the next argument, when the event is written.
+     *
+     * @param category - the event category.
+     * @param level    - the event level.
+     * @param template - the message template (a constant, it is kept until the event is written).
+     */
+    public void log(Category category, Level level, String template) {
+        if (isLoggable(category, level)) append(level, template, 0, 0, 0, 0, null);
+    }
+
+    public void log(Category category, Level level, String template, long a) {
+        if (isLoggable(category, level)) append(level, template, 1, a, 0, 0, null);
+    }
+
+    public void log(Category category, Level level, String template, long a, long b) {
+        if (isLoggable(category, level)) append(level, template, 2, a, b, 0, null);
+    }
+
+    public void log(Category category, Level level, String template, long a, long b, long c) {
+        if (isLoggable(category, level)) append(level, template, 3, a, b, c, null);
+    }
+
+    private void append(Level level, String template, int argCount, long a, long b, long c, LogRecord record) {
+        if (closed) return;
+        long sequence;
+        do {
+            sequence = next.get();
+            if (sequence - consumed >= ring.length) {
+                dropped.increment();
+                return;
+            }
+        } while (!next.compareAndSet(sequence, sequence + 1));
+
+        Entry entry = ring[(int) sequence & mask];
+        entry.millis = record != null ? record.getMillis() : System.currentTimeMillis();
+        entry.thread = Thread.currentThread().getName();
+        entry.level = level;
+        entry.template = template;
+        entry.argCount = argCount;
+        entry.a = a;
+        entry.b = b;
+        entry.c = c;
+        entry.record = record;
+        entry.published = sequence + 1;
+    }
+
+    /**
+     * Waits (up to a second) until all the events logged so far are written to the file.
+     */
+    public void flush() {
+        long target = next.get();
+        flushRequested = target;
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while (flushed < target && writer.isAlive() && System.nanoTime() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    /**
+     * Writes the remaining events and closes the file. Events logged after this are ignored.
+     */
+    public void close() {
+        if (closed) return;
+        flush();
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException ignored) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return - the number of events dropped because the ring buffer was full.
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * The main loop of the writer thread.
+     */
+    private void write() {
+        try {
+            while (!closed) {
+                boolean wrote = drain();
+                if ((!wrote || flushRequested > flushed) && flushed != consumed) {
+                    out.flush();
+                    flushed = consumed;
+                }
+                if (!wrote) LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+            }
+            drain();
+            long lost = dropped();
+            if (lost > 0) out.write("game log: dropped " + lost + " events (the ring buffer was full)" + System.lineSeparator());
+            out.close();
+        } catch (IOException e) {
+            System.err.println("game log: cannot write the log file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Writes all the published events.
+     *
+     * @return - true iff any event was written.
+     */
+    private boolean drain() throws IOException {
+        boolean any = false;
+        long sequence = consumed;
+        String lineFormat = format;
+        for (Entry entry = ring[(int) sequence & mask]; entry.published == sequence + 1; entry = ring[(int) sequence & mask]) {
+            String text = entry.record != null ? entry.record.getMessage() : formatMessage(entry);
+            out.write(String.format(lineFormat, entry.millis, entry.level.getLocalizedName(), text, entry.thread));
+            entry.record = null;
+            entry.template = null;
+            entry.thread = null;
+            consumed = ++sequence;
+            any = true;
+        }
+        return any;
+    }
+
+    private String formatMessage(Entry entry) {
+        message.setLength(0);
+        String template = entry.template;
+        int from = 0;
+        for (int arg = 0; arg < entry.argCount; arg++) {
+            int at = template.indexOf("{}", from);
+            if (at < 0) break;
+            message.append(template, from, at).append(arg == 0 ? entry.a : arg == 1 ? entry.b : entry.c);
+            from = at + 2;
+        }
+        return message.append(template, from, template.length()).toString();
+    }
+
+    /**
+     * @return - a java.util.logging handler that writes the records to this log (the GAME category).
+     */
+    public Handler handler() {
+        return new LogHandler();
+    }
+
+    /**
+     * Writes java.util.logging records to the game log. The records are formatted by the writer thread with the
+     * log's format (the handler's formatter is not used).
+     */
+    public class LogHandler extends Handler {
+
+        @Override
+        public void publish(LogRecord record) {
+            if (GameLog.this.isLoggable(Category.GAME, record.getLevel()))
+                append(record.getLevel(), null, 0, 0, 0, 0, record);
+        }
+
+        @Override
+        public void flush() {
+            GameLog.this.flush();
+        }
+
+        @Override
+        public void close() {
+            GameLog.this.close();
+        }
+
+        /**
+         * @return - the game log this handler writes to.
+         */
+        public GameLog log() {
+            return GameLog.this;
+        }
+    }
+}
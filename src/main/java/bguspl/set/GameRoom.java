@@ -0,0 +1,276 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * A single game hosted by a GameServer: its own Env, Table, Dealer and players, with all the game tasks running on
+ * the server's shared executor.
+ * <p>
+ * The room accounts for the threads its tasks hold and the bytes they allocate (where the JVM can measure it).
+ */
+public class GameRoom {
+
+    /**
+     * The lifecycle of a room.
+     */
+    public enum State {
+        /**
+         * Opened but not started yet.
+         */
+        CREATED,
+        /**
+         * Started, waiting for the server to have enough free threads for all its tasks.
+         */
+        QUEUED,
+        /**
+         * The game is being played.
+         */
+        RUNNING,
+        /**
+         * The game ended (normally or by terminate).
+         */
+        FINISHED,
+        /**
+         * A game task failed or the room went over its allocation limit.
+         */
+        FAILED
+    }
+
+    /**
+     * Measures the bytes allocated by each thread, or null if the JVM does not support it.
+     */
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    public final int id;
+    public final Env env;
+
+    private final GameServer server;
+    private final Table table;
+    private final Dealer dealer;
+    private final Player[] players;
+
+    /**
+     * The number of threads the room holds while running: the dealer, a thread per player and a thread per AI.
+     */
+    private final int threads;
+
+    private volatile State state = State.CREATED;
+    private volatile Throwable failure;
+    private final CountDownLatch done = new CountDownLatch(1);
+
+    /**
+     * The number of the room's tasks that are running now, and the most that ran at once.
+     */
+    private final AtomicInteger runningTasks = new AtomicInteger();
+    private final AtomicInteger peakTasks = new AtomicInteger();
+
+    /**
+     * The bytes allocated by finished tasks, and the allocation counter of each running task's thread when the task
+     * started.
+     */
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final Map<Thread, Long> allocationBaselines = new ConcurrentHashMap<>();
+
+    /**
+     * The clock and real (nanoTime) times the game started and ended.
+     */
+    private volatile long startedMillis;
+    private volatile long finishedMillis;
+    private volatile long startedNanos;
+    private volatile long finishedNanos;
+
+    GameRoom(GameServer server, int id, Logger logger, Config config, Util util, UserInterface ui, Clock clock) {
+        this.server = server;
+        this.id = id;
+        this.env = new Env(logger, config, ui, util, clock, this::executeTask, Journal.NONE, seed(config.seed, id),
+                server.metrics);
+        this.players = new Player[config.players];
+        this.table = new Table(env);
+        this.dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, i < config.humanPlayers);
+        this.threads = 1 + config.players + config.computerPlayers;
+    }
+
+    /**
+     * Asks the server to run the game as soon as it has enough free threads.
+     */
+    public void start() {
+        if (state != State.CREATED) throw new IllegalStateException("room " + id + " was already started");
+        state = State.QUEUED;
+        server.admit(this);
+    }
+
+    /**
+     * Ends the game (if it is running).
+     */
+    public void terminate() {
+        dealer.terminate();
+    }
+
+    /**
+     * Waits until the game is finished or failed.
+     *
+     * @throws InterruptedException - if the calling thread was interrupted while waiting.
+     */
+    public void await() throws InterruptedException {
+        done.await();
+    }
+
+    /**
+     * Called by the server once the room's threads are reserved.
+     */
+    void run() {
+        state = State.RUNNING;
+        startedMillis = env.clock.millis();
+        startedNanos = System.nanoTime();
+        env.execute("dealer", () -> {
+            try {
+                dealer.run();
+            } catch (Throwable t) {
+                fail(t);
+            } finally {
+                finishedMillis = env.clock.millis();
+                finishedNanos = System.nanoTime();
+                if (failure == null) state = State.FINISHED;
+                done.countDown();
+                server.release(this);
+            }
+        });
+    }
+
+    /**
+     * Fails the room and ends its game.
+     *
+     * @param cause - why the room failed.
+     */
+    void fail(Throwable cause) {
+        if (failure == null) failure = cause;
+        state = State.FAILED;
+        env.logger.severe("room " + id + " failed: " + cause);
+        dealer.terminate();
+    }
+
+    /**
+     * Drops a room that never ran (the server shut down while it was queued).
+     */
+    void cancel() {
+        failure = new CancellationException("the server shut down before room " + id + " started");
+        state = State.FAILED;
+        done.countDown();
+    }
+
+    /**
+     * The executor of the room's Env: runs a game task on the server's executor, keeping the room's accounting.
+     */
+    private void executeTask(Runnable task) {
+        server.execute(() -> {
+            Thread thread = Thread.currentThread();
+            int running = runningTasks.incrementAndGet();
+            peakTasks.accumulateAndGet(running, Math::max);
+            allocationBaselines.put(thread, allocatedBytes(thread));
+            try {
+                task.run();
+            } catch (Throwable t) {
+                fail(t);
+            } finally {
+                allocatedBytes.add(allocatedBytes(thread) - allocationBaselines.remove(thread));
+                runningTasks.decrementAndGet();
+            }
+        });
+    }
+
+    public State state() {
+        return state;
+    }
+
+    /**
+     * @return - the reason the room failed, or null.
+     */
+    public Throwable failure() {
+        return failure;
+    }
+
+    public Dealer dealer() {
+        return dealer;
+    }
+
+    public Player[] players() {
+        return players;
+    }
+
+    /**
+     * @return - the number of threads the room holds while running.
+     */
+    public int threads() {
+        return threads;
+    }
+
+    /**
+     * @return - the most tasks of the room that ran at the same time.
+     */
+    public int peakTasks() {
+        return peakTasks.get();
+    }
+
+    /**
+     * @return - the bytes allocated so far by the room's tasks, or -1 if the JVM cannot measure it.
+     */
+    public long allocatedBytes() {
+        if (THREADS == null) return -1;
+        long total = allocatedBytes.sum();
+        for (Map.Entry<Thread, Long> entry : allocationBaselines.entrySet())
+            total += allocatedBytes(entry.getKey()) - entry.getValue();
+        return total;
+    }
+
+    /**
+     * @return - the game duration in clock milliseconds (so far, if it is still running).
+     */
+    public long gameMillis() {
+        if (startedNanos == 0) return 0;
+        return (finishedNanos == 0 ? env.clock.millis() : finishedMillis) - startedMillis;
+    }
+
+    /**
+     * @return - the game duration in real nanoseconds (so far, if it is still running).
+     */
+    public long realNanos() {
+        if (startedNanos == 0) return 0;
+        return (finishedNanos == 0 ? System.nanoTime() : finishedNanos) - startedNanos;
+    }
+
+    private static long allocatedBytes(Thread thread) {
+        return THREADS == null ? 0 : THREADS.getThreadAllocatedBytes(thread.getId());
+    }
+
+    /**
+     * @param seed - the configured seed.
+     * @param room - the room id.
+     * @return - the seed of the room's game: the configured seed for room 0, and a different one for every other room
+     * (so rooms opened with the same configuration do not play the same game).
+     */
+    static long seed(long seed, int room) {
+        return seed + room * 0x9e3779b97f4a7c15L;
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        if (!threads.isThreadAllocatedMemorySupported()) return null;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+}
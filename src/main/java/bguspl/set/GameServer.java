@@ -0,0 +1,256 @@
+package bguspl.set;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Logger;
+
+/**
+ * Hosts many games (rooms) in one JVM, running all their tasks on a single bounded thread pool (or, with virtual
+ * threads, on a new virtual thread per task).
+ * <p>
+ * Every game task (dealer, player, AI) blocks for the whole game, so a room only starts once there is a free thread
+ * for each of its tasks; rooms that do not fit wait in a FIFO queue and start as running rooms finish. This caps the
+ * total number of threads at maxThreads, however many rooms are opened. Optionally, a room whose tasks
+ * allocated more than a limit is failed and terminated.
+ */
+public class GameServer {
+
+    private final Logger logger;
+
+    /**
+     * The maximal number of threads of all the rooms together.
+     */
+    private final int maxThreads;
+
+    /**
+     * The allocation limit of a room in bytes (0 for no limit).
+     */
+    private final long roomAllocationLimit;
+
+    /**
+     * The engine metrics of all the rooms.
+     */
+    final Metrics metrics;
+
+    /**
+     * The pool running the tasks (null with virtual threads, which are not pooled).
+     */
+    private final ThreadPoolExecutor pool;
+    private final Executor executor;
+
+    /**
+     * The number of tasks running now, and the most that ran at once.
+     */
+    private final AtomicInteger runningTasks = new AtomicInteger();
+    private final AtomicInteger peakTasks = new AtomicInteger();
+
+    /**
+     * Checks the allocation limit of the running rooms (null if there is no limit).
+     */
+    private final ScheduledExecutorService watchdog;
+
+    /**
+     * The admission state (guarded by lock): the threads reserved by running rooms, the running rooms and the rooms
+     * waiting for threads.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+    private int reservedThreads;
+    private final List<GameRoom> running = new ArrayList<>();
+    private final ArrayDeque<GameRoom> queued = new ArrayDeque<>();
+    private boolean shutdown;
+
+    private final AtomicInteger nextRoomId = new AtomicInteger();
+
+    /**
+     * @param logger              - the server logger.
+     * @param threads             - creates the threads of the rooms' tasks.
+     * @param maxThreads          - the maximal number of threads of all the rooms together.
+     * @param roomAllocationLimit - the maximal number of bytes a room's tasks may allocate (0 for no limit).
+     * @param metrics             - the engine metrics the rooms record to (Metrics.NONE for none).
+     */
+    public GameServer(Logger logger, GameThreads threads, int maxThreads, long roomAllocationLimit, Metrics metrics) {
+        if (maxThreads <= 0) throw new IllegalArgumentException("invalid server threads: " + maxThreads);
+        this.logger = logger;
+        this.maxThreads = maxThreads;
+        this.roomAllocationLimit = roomAllocationLimit;
+        this.metrics = metrics;
+
+        if (threads.virtual) {
+            pool = null;
+            executor = threads::start;
+        } else {
+            pool = new ThreadPoolExecutor(maxThreads, maxThreads, 30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), threads);
+            pool.allowCoreThreadTimeOut(true);
+            executor = pool;
+        }
+
+        if (roomAllocationLimit > 0) {
+            watchdog = Executors.newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, "server-watchdog");
+                thread.setDaemon(true);
+                return thread;
+            });
+            watchdog.scheduleWithFixedDelay(this::checkAllocations, 1, 1, TimeUnit.SECONDS);
+        } else
+            watchdog = null;
+    }
+
+    /**
+     * Opens a new room (it starts when its start method is called).
+     *
+     * @param logger - the logger of the game.
+     * @param config - the configuration of the game.
+     * @param util   - the util object of the game (may be shared by rooms with the same cards settings).
+     * @param ui     - the user interface of the game.
+     * @param clock  - the game clock.
+     * @return - the new room.
+     */
+    public GameRoom open(Logger logger, Config config, Util util, UserInterface ui, Clock clock) {
+        GameRoom room = new GameRoom(this, nextRoomId.getAndIncrement(), logger, config, util, ui, clock);
+        if (room.threads() > maxThreads)
+            throw new IllegalArgumentException("room " + room.id + " needs " + room.threads()
+                    + " threads but the server has only " + maxThreads);
+        return room;
+    }
+
+    /**
+     * Runs a room if there are enough free threads for it, or queues it.
+     */
+    void admit(GameRoom room) {
+        lock.lock();
+        try {
+            if (shutdown) throw new IllegalStateException("the server is shut down");
+            queued.add(room);
+            startQueued();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Called when a room finished: frees its threads for the queued rooms.
+     */
+    void release(GameRoom room) {
+        lock.lock();
+        try {
+            if (running.remove(room))
+                reservedThreads -= room.threads();
+            startQueued();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts the queued rooms in order, as long as the first one fits.
+     *
+     * @pre - the caller holds the lock.
+     */
+    private void startQueued() {
+        while (!queued.isEmpty() && reservedThreads + queued.peek().threads() <= maxThreads) {
+            GameRoom room = queued.poll();
+            reservedThreads += room.threads();
+            running.add(room);
+            room.run();
+        }
+    }
+
+    /**
+     * Fails the running rooms that went over the allocation limit.
+     */
+    private void checkAllocations() {
+        for (GameRoom room : runningRooms()) {
+            long allocated = room.allocatedBytes();
+            if (allocated > roomAllocationLimit && room.state() == GameRoom.State.RUNNING)
+                room.fail(new IllegalStateException("room allocated " + allocated + " bytes, over the limit of "
+                        + roomAllocationLimit));
+        }
+    }
+
+    /**
+     * @return - the rooms running now.
+     */
+    public List<GameRoom> runningRooms() {
+        lock.lock();
+        try {
+            return new ArrayList<>(running);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return - the number of rooms waiting for threads.
+     */
+    public int queuedRooms() {
+        lock.lock();
+        try {
+            return queued.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return - the number of game tasks running now (each holds a thread).
+     */
+    public int runningTasks() {
+        return runningTasks.get();
+    }
+
+    /**
+     * @return - the most game tasks that ran at once.
+     */
+    public int peakTasks() {
+        return peakTasks.get();
+    }
+
+    /**
+     * Runs a task of a room.
+     */
+    void execute(Runnable task) {
+        executor.execute(() -> {
+            peakTasks.accumulateAndGet(runningTasks.incrementAndGet(), Math::max);
+            try {
+                task.run();
+            } finally {
+                runningTasks.decrementAndGet();
+            }
+        });
+    }
+
+    /**
+     * Terminates all the rooms (queued rooms are cancelled) and waits for the running ones to finish.
+     *
+     * @throws InterruptedException - if the calling thread was interrupted while waiting.
+     */
+    public void shutdown() throws InterruptedException {
+        List<GameRoom> rooms;
+        lock.lock();
+        try {
+            shutdown = true;
+            for (GameRoom room : queued)
+                room.cancel();
+            queued.clear();
+            rooms = new ArrayList<>(running);
+        } finally {
+            lock.unlock();
+        }
+        for (GameRoom room : rooms)
+            room.terminate();
+        for (GameRoom room : rooms)
+            room.await();
+        if (watchdog != null) watchdog.shutdownNow();
+        if (pool != null) pool.shutdown();
+        logger.info("server shut down, peak tasks: " + peakTasks() + ".");
+    }
+}
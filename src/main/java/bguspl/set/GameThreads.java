@@ -0,0 +1,67 @@
+package bguspl.set;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Creates the threads of the game tasks (dealer, players and AI key press generators), as selected by the ThreadMode
+ * setting: platform threads (with an optional stack size), or virtual threads when the game runs on Java 21 or later.
+ * <p>
+ * The code is compiled for Java 8, so virtual threads are created through reflection; if the runtime does not have
+ * them, a warning is logged and platform threads are used instead.
+ */
+public class GameThreads implements ThreadFactory {
+
+    /**
+     * True iff the threads created are virtual threads.
+     */
+    public final boolean virtual;
+
+    /**
+     * The virtual thread factory (null for platform threads).
+     */
+    private final ThreadFactory virtualFactory;
+
+    /**
+     * The stack size of platform threads in bytes (0 for the JVM default).
+     */
+    private final long stackBytes;
+
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    public GameThreads(Config config, Logger logger) {
+        this.stackBytes = config.threadStackBytes;
+        this.virtualFactory = config.virtualThreads ? virtualThreadFactory(logger) : null;
+        this.virtual = virtualFactory != null;
+    }
+
+    @Override
+    public Thread newThread(Runnable task) {
+        if (virtual) return virtualFactory.newThread(task);
+        return new Thread(null, task, "game-" + threadCount.incrementAndGet(), stackBytes);
+    }
+
+    /**
+     * Runs a task on a new thread.
+     *
+     * @param task - the task.
+     */
+    public void start(Runnable task) {
+        newThread(task).start();
+    }
+
+    /**
+     * @return - a factory of virtual threads (Thread.ofVirtual().factory()), or null if the runtime has none.
+     */
+    private static ThreadFactory virtualThreadFactory(Logger logger) {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            logger.severe("warning: virtual threads need Java 21 (running on " + System.getProperty("java.version")
+                    + "), using platform threads.");
+            return null;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A binary journal of the events of a game, for replays (see bguspl.set.ex.Replayer) and post-mortems.
+ * <p>
+ * The journal is an append-only file of fixed size records, written through memory mapped regions of the file: a
+ * thread recording an event claims the next record with a single atomic increment and writes it with plain puts,
+ * with no formatting, locking or system calls (a new region is mapped once every REGION_RECORDS records).
+ * The event type of a record is written last, and the unused part of a region reads as zeros, so a reader stops at
+ * the first record with no type: a journal of a game that crashed is still readable up to the last whole record
+ * (the file is always a whole number of regions long).
+ * <p>
+ * Record layout (RECORD_BYTES bytes, little endian): the clock time in milliseconds since the journal was opened
+ * (long), the event type (byte), a padding byte, the player id (short), the slot (int), the card (int), a padding int
+ * and a value (long). Fields that do not apply to an event are -1 (0 for the value). The first record is a header:
+ * MAGIC (long), VERSION (int), the table size (int), the number of players (int), the feature size (int) and the
+ * wall clock time the journal was opened (long).
+ */
+public class Journal implements AutoCloseable {
+
+    /**
+     * The game events recorded.
+     */
+    public enum Event {
+        /**
+         * A card was placed on the table (slot, card).
+         */
+        CARD_PLACED,
+        /**
+         * A card was removed from the table, together with the tokens on it (slot, card).
+         */
+        CARD_REMOVED,
+        /**
+         * A player placed a token (player, slot).
+         */
+        TOKEN_PLACED,
+        /**
+         * A player removed a token (player, slot).
+         */
+        TOKEN_REMOVED,
+        /**
+         * A player claimed a set (player, the slots in the value: see claimSlots).
+         */
+        CLAIM,
+        /**
+         * The dealer decided a claim (player, the Dealer.Verdict ordinal in the value).
+         */
+        VERDICT,
+        /**
+         * The score of a player changed (player, the score in the value).
+         */
+        SCORE,
+        /**
+         * The freeze display of a player changed (player, the remaining freeze milliseconds in the value).
+         */
+        FREEZE,
+        /**
+         * The dealer returned all the cards to the deck and reshuffled it (the number of reshuffles in the value).
+         */
+        RESHUFFLE;
+
+        private static final Event[] VALUES = values();
+    }
+
+    /**
+     * A record read from a journal.
+     */
+    public static final class Record {
+
+        /**
+         * The clock time of the event, in milliseconds since the journal was opened.
+         */
+        public final long millis;
+        public final Event event;
+        public final int player;
+        public final int slot;
+        public final int card;
+        public final long value;
+
+        public Record(long millis, Event event, int player, int slot, int card, long value) {
+            this.millis = millis;
+            this.event = event;
+            this.player = player;
+            this.slot = slot;
+            this.card = card;
+            this.value = value;
+        }
+
+        @Override
+        public String toString() {
+            return millis + "ms " + event + " player: " + player + " slot: " + slot + " card: " + card + " value: " + value;
+        }
+    }
+
+    /**
+     * A journal that records nothing (the default of the game environment).
+     */
+    public static final Journal NONE = new Journal();
+
+    public static final long MAGIC = 0x4c4e524a54455342L; // "BSETJRNL" little endian
+    public static final int VERSION = 1;
+    public static final int RECORD_BYTES = 32;
+
+    /**
+     * The number of records in each mapped region of the file.
+     */
+    private static final int REGION_RECORDS = 1 << 15;
+    private static final long REGION_BYTES = (long) REGION_RECORDS * RECORD_BYTES;
+
+    /**
+     * The number of slots a CLAIM record holds (16 bits each).
+     */
+    public static final int CLAIM_SLOTS = 4;
+
+    private final boolean enabled;
+    private final Clock clock;
+    private final long originMillis;
+    private final FileChannel channel;
+
+    /**
+     * The index of the next record to write (the header is record 0).
+     */
+    private final AtomicLong next = new AtomicLong(1);
+
+    /**
+     * The mapped regions of the file (a region is mapped by the first writer that needs it, under regionsLock).
+     */
+    private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+    private final ReentrantLock regionsLock = new ReentrantLock();
+
+    private volatile boolean closed;
+
+    private Journal() {
+        enabled = false;
+        clock = null;
+        originMillis = 0;
+        channel = null;
+    }
+
+    /**
+     * Creates a journal file (overwritten if it exists) and writes its header.
+     *
+     * @param file   - the journal file.
+     * @param config - the game configuration.
+     * @param clock  - the game clock (the event times are in clock time).
+     * @throws IOException - if the file cannot be created.
+     */
+    public Journal(Path file, Config config, Clock clock) throws IOException {
+        enabled = true;
+        this.clock = clock;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        originMillis = clock.millis();
+        ByteBuffer header = region(0);
+        header.putLong(0, MAGIC);
+        header.putInt(8, VERSION);
+        header.putInt(12, config.tableSize);
+        header.putInt(16, config.players);
+        header.putInt(20, config.featureSize);
+        header.putLong(24, System.currentTimeMillis());
+    }
+
+    /**
+     * @return - true iff events are recorded.
+     */
+    public boolean enabled() {
+        return enabled;
+    }
+
+    /**
+     * Records an event.
+     *
+     * @param event  - the event type.
+     * @param player - the player id (-1 if none).
+     * @param slot   - the slot (-1 if none).
+     * @param card   - the card id (-1 if none).
+     * @param value  - the event value (0 if none).
+     */
+    public void record(Event event, int player, int slot, int card, long value) {
+        if (!enabled || closed) return;
+        long millis = clock.millis() - originMillis;
+        long index = next.getAndIncrement();
+        ByteBuffer region;
+        try {
+            region = region(index / REGION_RECORDS);
+        } catch (IOException e) {
+            return; // the disk is full, the journal ends here
+        }
+        int at = (int) (index % REGION_RECORDS) * RECORD_BYTES;
+        region.putLong(at, millis);
+        region.putShort(at + 10, (short) player);
+        region.putInt(at + 12, slot);
+        region.putInt(at + 16, card);
+        region.putLong(at + 24, value);
+        region.put(at + 8, (byte) (event.ordinal() + 1)); // written last: the record is whole once it has a type
+    }
+
+    /**
+     * Records a set claim.
+     *
+     * @param player - the claiming player.
+     * @param slots  - the slots of the claim (the first CLAIM_SLOTS are recorded).
+     */
+    public void recordClaim(int player, int[] slots) {
+        if (!enabled) return;
+        long value = 0;
+        for (int i = Math.min(slots.length, CLAIM_SLOTS) - 1; i >= 0; i--)
+            value = value << 16 | slots[i] & 0xffff;
+        record(Event.CLAIM, player, -1, -1, value);
+    }
+
+    /**
+     * @param record - a CLAIM record.
+     * @param count  - the number of slots in the claim (the feature size).
+     * @return - the slots of the claim.
+     */
+    public static int[] claimSlots(Record record, int count) {
+        int[] slots = new int[Math.min(count, CLAIM_SLOTS)];
+        for (int i = 0; i < slots.length; i++)
+            slots[i] = (int) (record.value >>> (16 * i) & 0xffff);
+        return slots;
+    }
+
+    private MappedByteBuffer region(long index) throws IOException {
+        MappedByteBuffer[] mapped = regions;
+        if (index < mapped.length && mapped[(int) index] != null) return mapped[(int) index];
+        regionsLock.lock();
+        try {
+            mapped = regions;
+            if (index < mapped.length && mapped[(int) index] != null) return mapped[(int) index];
+            // copied on write, so a writer that reads regions without the lock sees whole buffers
+            mapped = Arrays.copyOf(mapped, (int) Math.max(index + 1, 2L * mapped.length));
+            MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, index * REGION_BYTES, REGION_BYTES);
+            region.order(ByteOrder.LITTLE_ENDIAN);
+            mapped[(int) index] = region;
+            regions = mapped;
+            return region;
+        } finally {
+            regionsLock.unlock();
+        }
+    }
+
+    /**
+     * Forces the records to the disk and closes the file. Events recorded after this are ignored.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!enabled || closed) return;
+        closed = true;
+        for (MappedByteBuffer region : regions)
+            if (region != null) region.force();
+        channel.close();
+    }
+
+    /**
+     * Reads a journal file.
+     *
+     * @param file - the journal file.
+     * @return - the records in the file, in the order they were recorded (without the header).
+     * @throws IOException - if the file cannot be read or is not a journal.
+     */
+    public static List<Record> read(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.limit() < RECORD_BYTES || buffer.getLong(0) != MAGIC)
+            throw new IOException("not a game journal: " + file);
+        if (buffer.getInt(8) != VERSION)
+            throw new IOException("unsupported journal version " + buffer.getInt(8) + ": " + file);
+
+        List<Record> records = new ArrayList<>();
+        for (int at = RECORD_BYTES; at + RECORD_BYTES <= buffer.limit(); at += RECORD_BYTES) {
+            int type = buffer.get(at + 8);
+            if (type <= 0 || type > Event.VALUES.length) break;
+            records.add(new Record(buffer.getLong(at), Event.VALUES[type - 1], buffer.getShort(at + 10),
+                    buffer.getInt(at + 12), buffer.getInt(at + 16), buffer.getLong(at + 24)));
+        }
+        return records;
+    }
+
+    /**
+     * @param file - a journal file.
+     * @return - the header of the journal: the table size, the number of players and the feature size.
+     * @throws IOException - if the file cannot be read or is not a journal.
+     */
+    public static int[] readHeader(Path file) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(RECORD_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (header.hasRemaining())
+                if (in.read(header) < 0) break;
+        }
+        if (header.hasRemaining() || header.getLong(0) != MAGIC) throw new IOException("not a game journal: " + file);
+        return new int[]{header.getInt(12), header.getInt(16), header.getInt(20)};
+    }
+}
@@ -2,14 +2,19 @@ package bguspl.set;
 
 import bguspl.set.ex.Dealer;
 import bguspl.set.ex.Player;
+import bguspl.set.ex.Replayer;
 import bguspl.set.ex.Table;
 
+import javax.management.JMException;
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Date;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
 import java.util.logging.*;
 
 /**
@@ -23,10 +28,26 @@ public class Main {
     private static boolean xButtonPressed = false;
     private static Logger logger;
 
+    /**
+     * The asynchronous log of the game (the logger writes to it too).
+     */
+    private static GameLog gameLog;
+
+    /**
+     * The number of entries in the game log ring buffer.
+     */
+    private static final int GAME_LOG_CAPACITY = 1 << 16;
+
+    /**
+     * The object name of the metrics MBean (with MetricsJmx).
+     */
+    private static final String METRICS_MBEAN_NAME = "bguspl.set:type=Metrics";
+
     public static void xButtonPressed() throws InterruptedException {
         if (logger != null) logger.severe("exit button pressed");
         xButtonPressed = true;
         if (dealer != null) dealer.terminate();
+        else mainThread.interrupt(); // replaying a journal
         mainThread.join();
     }
 
@@ -42,22 +63,40 @@ public class Main {
         // create the game environment objects
         logger = initLogger();
         ThreadLogger.logStart(logger, Thread.currentThread().getName());
-        Config config = new Config(logger, "config.properties");
-        Util util = new UtilImpl(config);
+        Properties properties = Config.loadProperties("config.properties", logger);
+        Config config = new Config(logger, properties);
+        gameLog.configure(config);
+        logStartupPhase("configuration loaded");
+        if (config.simulationGames > 0) {
+            simulate(config, properties);
+            return;
+        }
+        Metrics metrics = openMetrics(config);
+        Util util = new UtilImpl(config, metrics);
 
         Player[] players = new Player[config.players];
         UserInterface ui = null;
         try {
-            ui = new UserInterfaceSwing(logger, config, players);
+            ui = new UserInterfaceSwing(logger, gameLog, config, players);
         } catch (UnsupportedOperationException | IllegalArgumentException e) {
             logger.severe("error creating swing user interface: " + e.getMessage());
             logger.severe("will try to run without user interface");
             if (config.humanPlayers > 0)
                 logger.severe("warning: running with human players with no user interface");
         }
-        ui = new UserInterfaceDecorator(logger, util, ui);
+        logStartupPhase("user interface created");
+        ui = new UserInterfaceDecorator(gameLog, util, ui);
 
-        Env env = new Env(logger, config, ui, util);
+        if (!config.replayFile.isEmpty()) {
+            replay(Env.builder(logger, config, ui, util).clock(new ScaledClock(config.replaySpeedup)).build());
+            metrics.close();
+            return;
+        }
+        logger.info("game seed: " + config.seed + ".");
+        Clock clock = new ScaledClock(1);
+        Journal journal = openJournal(config, clock);
+        Env env = new Env(logger, config, ui, util, clock, new GameThreads(config, logger)::start, journal, config.seed,
+                metrics);
 
         // create the game entities
         Table table = new Table(env);
@@ -65,40 +104,134 @@ public class Main {
         for (int i = 0; i < players.length; i++)
             players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers);
 
-        // start the dealer thread
-        ThreadLogger dealerThread = new ThreadLogger(dealer, "dealer", logger);
-        dealerThread.startWithLog();
+        // start the dealer thread (a platform or virtual thread, as configured)
+        CountDownLatch dealerDone = new CountDownLatch(1);
+        ThreadLogger.logStart(logger, "dealer");
+        env.execute("dealer", () -> {
+            try {
+                dealer.run();
+            } finally {
+                dealerDone.countDown();
+            }
+        });
 
         try {
             // shutdown stuff
-            dealerThread.joinWithLog();
+            try {
+                dealerDone.await();
+            } finally {
+                ThreadLogger.logStop(logger, "dealer");
+            }
             if (!xButtonPressed && config.endGamePauseMillies > 0) Thread.sleep(config.endGamePauseMillies);
         } catch (InterruptedException ignored) {
         } finally {
             logger.severe("thanks for playing... it was fun!");
             System.out.println("Thanks for playing... it was fun!");
+            ThreadLogger.logStop(logger, Thread.currentThread().getName());
+            if (!xButtonPressed) env.ui.dispose();
+            closeJournal(journal);
+            metrics.close();
+            for (Handler h : logger.getHandlers()) h.flush();
+        }
+    }
+
+    /**
+     * @return - the journal of the game (Journal.NONE if the game is not journaled or the file cannot be created).
+     */
+    private static Journal openJournal(Config config, Clock clock) {
+        if (config.journalFile.isEmpty()) return Journal.NONE;
+        try {
+            Journal journal = new Journal(Paths.get(config.journalFile), config, clock);
+            logger.info("recording the game journal to " + config.journalFile + ".");
+            return journal;
+        } catch (IOException e) {
+            logger.severe("cannot create the game journal " + config.journalFile + ": " + e.getMessage());
+            return Journal.NONE;
+        }
+    }
+
+    /**
+     * @return - the engine metrics of the game, dumped to the metrics file and exposed through JMX as configured
+     * (Metrics.NONE if neither is, so nothing is recorded).
+     */
+    private static Metrics openMetrics(Config config) {
+        if (config.metricsFile.isEmpty() && !config.metricsJmx) return Metrics.NONE;
+        Metrics metrics = new Metrics();
+        if (!config.metricsFile.isEmpty()) {
+            metrics.startDumps(Paths.get(config.metricsFile), config.metricsDumpMillis);
+            logger.info("dumping the engine metrics to " + config.metricsFile + " every " + config.metricsDumpMillis + "ms.");
+        }
+        if (config.metricsJmx) try {
+            metrics.registerMBean(METRICS_MBEAN_NAME);
+        } catch (JMException e) {
+            logger.severe("cannot register the metrics MBean: " + e.getMessage());
+        }
+        return metrics;
+    }
+
+    private static void closeJournal(Journal journal) {
+        try {
+            journal.close();
+        } catch (IOException e) {
+            logger.severe("cannot close the game journal: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Replays a game journal on the user interface instead of playing a game.
+     */
+    private static void replay(Env env) {
+        try {
+            new Replayer(env, new Table(env)).replay(Paths.get(env.config.replayFile));
+            if (!xButtonPressed && env.config.endGamePauseMillies > 0) Thread.sleep(env.config.endGamePauseMillies);
+        } catch (IOException e) {
+            logger.severe("cannot replay " + env.config.replayFile + ": " + e.getMessage());
+        } catch (InterruptedException ignored) {
+        } finally {
             ThreadLogger.logStop(logger, Thread.currentThread().getName());
             if (!xButtonPressed) env.ui.dispose();
             for (Handler h : logger.getHandlers()) h.flush();
         }
     }
 
+    /**
+     * Logs the time since the jvm started (the user interface logs when the card images are decoded and when the
+     * first frame is painted).
+     */
+    private static void logStartupPhase(String phase) {
+        logger.info(phase + " " + ManagementFactory.getRuntimeMXBean().getUptime() + "ms after the jvm started.");
+    }
+
+    /**
+     * Runs the headless simulation mode instead of an interactive game.
+     */
+    private static void simulate(Config config, Properties properties) {
+        Metrics metrics = openMetrics(config);
+        try {
+            new Simulator(logger, config, properties, metrics).run();
+        } catch (InterruptedException ignored) {
+        } finally {
+            metrics.close();
+            ThreadLogger.logStop(logger, Thread.currentThread().getName());
+            for (Handler h : logger.getHandlers()) h.flush();
+        }
+    }
+
     private static Logger initLogger() {
 
         //just to make our log file nicer :)
         SimpleDateFormat format = new SimpleDateFormat("M-d_HH-mm-ss");
-        FileHandler handler;
         try {
             //noinspection ResultOfMethodCallIgnored
             new File("./logs/").mkdirs();
-            handler = new FileHandler("./logs/" + format.format(Calendar.getInstance().getTime()) + ".log");
+            gameLog = new GameLog(Paths.get("./logs/" + format.format(Calendar.getInstance().getTime()) + ".log"), GAME_LOG_CAPACITY);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
 
         java.util.logging.Logger logger = java.util.logging.Logger.getLogger("SetGameLogger");
         logger.setUseParentHandlers(false);
-        logger.addHandler(handler);
+        logger.addHandler(gameLog.handler());
         setLoggerLevelAndFormat(logger, Level.ALL, "[%1$tT.%1$tL] [%2$-7s] %3$s%n");
 
         return logger;
@@ -107,15 +240,19 @@ public class Main {
 
     public static void setLoggerLevelAndFormat(Logger logger, Level level, String format) {
         Handler[] handlers = logger.getHandlers();
-        if (handlers != null) Arrays.stream(handlers).forEach(h -> h.setFormatter(new SimpleFormatter() {
-            // default format (with timestamp)  = "[%1$tF %1$tT] [%2$-7s] %3$s%n";
-            @Override
-            public synchronized String format(LogRecord lr) {
-                return String.format(format, new Date(lr.getMillis()),
-                        lr.getLevel().getLocalizedName(), lr.getMessage()
-                );
-            }
-        }));
+        if (handlers != null) Arrays.stream(handlers).forEach(h -> {
+            if (h instanceof GameLog.LogHandler) {
+                // the game log formats on its writer thread
+                ((GameLog.LogHandler) h).log().setFormat(format);
+                ((GameLog.LogHandler) h).log().setLevel(GameLog.Category.GAME, level);
+            } else h.setFormatter(new SimpleFormatter() {
+                // default format (with timestamp)  = "[%1$tF %1$tT] [%2$-7s] %3$s%n";
+                @Override
+                public String format(LogRecord lr) {
+                    return String.format(format, lr.getMillis(), lr.getLevel().getLocalizedName(), lr.getMessage());
+                }
+            });
+        });
         logger.setLevel(level);
     }
 }
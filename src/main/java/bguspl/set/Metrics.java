@@ -0,0 +1,481 @@
+package bguspl.set;
+
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A registry of the engine's runtime metrics: counters and value (mostly latency) histograms, looked up by name.
+ * <p>
+ * Recording is cheap enough to leave on: a counter is a striped LongAdder, and a histogram is striped the same way:
+ * the recording threads are spread by thread id over up to CELLS cells, each with its own buckets, sum and max (merged
+ * by snapshot), so a value is recorded with an atomic increment of a bucket that few other threads share. This
+ * matters for histograms all the players record to, whose values mostly fall in the same few buckets. The buckets are
+ * log-linear like HdrHistogram's: each power of 2 is split into SUB_BUCKETS buckets, so a percentile is accurate to
+ * 1/SUB_BUCKETS of its value over the whole long range with a fixed, small array. Components look up their metrics
+ * once (when they are created) and keep them in fields, so recording never touches the registry.
+ * <p>
+ * The metrics are read with snapshot(), and can be dumped to a file periodically (startDumps) or exposed as the
+ * attributes of a JMX MBean (registerMBean).
+ */
+public class Metrics implements AutoCloseable {
+
+    /**
+     * A registry whose metrics record nothing (the default of the game environment).
+     */
+    public static final Metrics NONE = new Metrics(false);
+
+    /**
+     * The number of buckets each power of 2 is split into (a power of 2).
+     */
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /**
+     * The number of cells of each histogram: the number of processors rounded up to a power of 2, at most 64.
+     */
+    private static final int CELLS = Math.min(64, Integer.highestOneBit(
+            Math.max(1, 2 * Runtime.getRuntime().availableProcessors() - 1)));
+
+    /**
+     * The percentiles reported for each histogram.
+     */
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final boolean enabled;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * The thread writing the periodic dumps (null if there is none), and the object name of the MBean (null if it
+     * is not registered).
+     */
+    private volatile Thread dumper;
+    private volatile boolean closed;
+    private ObjectName mbeanName;
+
+    public Metrics() {
+        this(true);
+    }
+
+    private Metrics(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * A counter of events.
+     */
+    public static final class Counter {
+
+        private final boolean enabled;
+        private final LongAdder count = new LongAdder();
+
+        private Counter(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public void increment() {
+            if (enabled) count.increment();
+        }
+
+        public void add(long amount) {
+            if (enabled) count.add(amount);
+        }
+
+        public long get() {
+            return count.sum();
+        }
+    }
+
+    /**
+     * A histogram of non-negative values (e.g. nanoseconds or queue lengths).
+     */
+    public static final class Histogram {
+
+        private final boolean enabled;
+
+        /**
+         * The cells of the histogram, each created when a thread first records to it (none if disabled).
+         */
+        private final AtomicReferenceArray<Cell> cells;
+
+        private Histogram(boolean enabled) {
+            this.enabled = enabled;
+            this.cells = new AtomicReferenceArray<>(enabled ? CELLS : 0);
+        }
+
+        /**
+         * The part of a histogram recorded to by the threads whose ids hash to it.
+         */
+        private static final class Cell {
+            private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+            private final AtomicLong sum = new AtomicLong();
+            private final AtomicLong max = new AtomicLong();
+        }
+
+        /**
+         * Records a value (negative values are recorded as 0).
+         */
+        public void record(long value) {
+            if (!enabled) return;
+            if (value < 0) value = 0;
+            Cell cell = cell();
+            cell.buckets.incrementAndGet(bucket(value));
+            cell.sum.addAndGet(value);
+            long current;
+            while (value > (current = cell.max.get()) && !cell.max.compareAndSet(current, value)) ;
+        }
+
+        /**
+         * @return - the cell of the current thread (created on first use).
+         */
+        private Cell cell() {
+            int index = (int) (Thread.currentThread().getId() * 0x9E3779B97F4A7C15L >>> 32) & (CELLS - 1);
+            Cell cell = cells.get(index);
+            if (cell == null) {
+                cells.compareAndSet(index, null, new Cell());
+                cell = cells.get(index);
+            }
+            return cell;
+        }
+
+        /**
+         * @return - a System.nanoTime() reading to pass to recordSince, or 0 without reading the clock if the
+         * histogram is disabled.
+         */
+        public long startNanos() {
+            return enabled ? System.nanoTime() : 0;
+        }
+
+        /**
+         * Records the time since a System.nanoTime() reading.
+         *
+         * @param startNanos - the reading (see startNanos).
+         */
+        public void recordSince(long startNanos) {
+            if (enabled) record(System.nanoTime() - startNanos);
+        }
+
+        /**
+         * @return - a copy of the histogram's current state, merged from its cells (values recorded during the copy
+         * may be partly included).
+         */
+        public HistogramSnapshot snapshot() {
+            long[] counts = new long[BUCKETS];
+            long count = 0, sum = 0, max = 0;
+            for (int c = 0; c < cells.length(); c++) {
+                Cell cell = cells.get(c);
+                if (cell == null) continue;
+                for (int i = 0; i < BUCKETS; i++) {
+                    long bucketCount = cell.buckets.get(i);
+                    counts[i] += bucketCount;
+                    count += bucketCount;
+                }
+                sum += cell.sum.get();
+                max = Math.max(max, cell.max.get());
+            }
+            return new HistogramSnapshot(counts, count, sum, max);
+        }
+    }
+
+    /**
+     * @return - the bucket of a (non-negative) value: the values below 2 * SUB_BUCKETS have a bucket each, and above
+     * that each power of 2 is split into SUB_BUCKETS buckets.
+     */
+    static int bucket(long value) {
+        if (value < 2 * SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * @return - the largest value in a bucket.
+     */
+    static long bucketMax(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (bucket % SUB_BUCKETS + SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * An immutable copy of a histogram.
+     */
+    public static final class HistogramSnapshot {
+
+        private final long[] counts;
+        public final long count;
+        public final long sum;
+        public final long max;
+
+        private HistogramSnapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * @return - the average value (0 if nothing was recorded).
+         */
+        public long mean() {
+            return count == 0 ? 0 : sum / count;
+        }
+
+        /**
+         * @param percentile - the percentile (0 to 100).
+         * @return - the value at the percentile (an upper bound, accurate to 1/SUB_BUCKETS of the value).
+         */
+        public long percentile(double percentile) {
+            if (count == 0) return 0;
+            long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min(bucketMax(i), max);
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder("count=").append(count).append(" mean=").append(mean());
+            for (double percentile : PERCENTILES)
+                text.append(" p").append(percentileName(percentile)).append('=').append(percentile(percentile));
+            return text.append(" max=").append(max).toString();
+        }
+    }
+
+    /**
+     * An immutable copy of all the metrics, sorted by name.
+     */
+    public static final class Snapshot {
+
+        public final long millis;
+        public final Map<String, Long> counters;
+        public final Map<String, HistogramSnapshot> histograms;
+
+        private Snapshot(long millis, Map<String, Long> counters, Map<String, HistogramSnapshot> histograms) {
+            this.millis = millis;
+            this.counters = Collections.unmodifiableMap(counters);
+            this.histograms = Collections.unmodifiableMap(histograms);
+        }
+
+        /**
+         * @return - the metrics, one per line ("name value" for counters, "name count=... mean=... p50=..." for
+         * histograms).
+         */
+        @Override
+        public String toString() {
+            StringBuilder text = new StringBuilder();
+            counters.forEach((name, value) -> text.append(name).append(' ').append(value).append(System.lineSeparator()));
+            histograms.forEach((name, value) -> text.append(name).append(' ').append(value).append(System.lineSeparator()));
+            return text.toString();
+        }
+    }
+
+    /**
+     * @param name - the name of the counter.
+     * @return - the counter with the name (created on first use).
+     */
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter(enabled));
+    }
+
+    /**
+     * @param name - the name of the histogram.
+     * @return - the histogram with the name (created on first use).
+     */
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram(enabled));
+    }
+
+    /**
+     * @return - a copy of the current values of all the metrics.
+     */
+    public Snapshot snapshot() {
+        Map<String, Long> counterValues = new TreeMap<>();
+        counters.forEach((name, counter) -> counterValues.put(name, counter.get()));
+        Map<String, HistogramSnapshot> histogramValues = new TreeMap<>();
+        histograms.forEach((name, histogram) -> histogramValues.put(name, histogram.snapshot()));
+        return new Snapshot(System.currentTimeMillis(), counterValues, histogramValues);
+    }
+
+    /**
+     * Appends a snapshot of the metrics to a file every period, and once more when the registry is closed.
+     *
+     * @param file         - the file (appended to).
+     * @param periodMillis - the time between dumps in milliseconds.
+     */
+    public synchronized void startDumps(Path file, long periodMillis) {
+        if (dumper != null) throw new IllegalStateException("the metrics are already dumped");
+        Thread thread = new Thread(() -> {
+            while (!closed) {
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(periodMillis));
+                dump(file);
+            }
+        }, "metrics-dump");
+        thread.setDaemon(true);
+        dumper = thread;
+        thread.start();
+    }
+
+    /**
+     * Appends a snapshot of the metrics to a file.
+     *
+     * @param file - the file.
+     */
+    public void dump(Path file) {
+        Snapshot snapshot = snapshot();
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            out.println("# " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(snapshot.millis)));
+            out.print(snapshot);
+            out.println();
+        } catch (IOException e) {
+            System.err.println("metrics: cannot write " + file + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Registers the metrics as the attributes of a JMX MBean on the platform MBean server: a counter is an attribute
+     * with its name, and a histogram is an attribute per statistic (name.count, name.mean, name.p99 etc.).
+     *
+     * @param name - the object name of the MBean (e.g. "bguspl.set:type=Metrics").
+     * @throws JMException - if the MBean cannot be registered.
+     */
+    public synchronized void registerMBean(String name) throws JMException {
+        ObjectName objectName = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MetricsMBean(), objectName);
+        mbeanName = objectName;
+    }
+
+    /**
+     * Stops the periodic dumps (after a last one) and unregisters the MBean.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) return;
+        closed = true;
+        Thread thread = dumper;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (mbeanName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            try {
+                server.unregisterMBean(mbeanName);
+            } catch (JMException ignored) {
+            }
+            mbeanName = null;
+        }
+    }
+
+    private static String percentileName(double percentile) {
+        return percentile == Math.rint(percentile) ? Long.toString((long) percentile) : Double.toString(percentile);
+    }
+
+    /**
+     * Exposes the metrics (as they are when each attribute is read) to JMX. The attributes are listed again on every
+     * getMBeanInfo, as metrics are created while the game runs.
+     */
+    private class MetricsMBean implements DynamicMBean {
+
+        @Override
+        public Object getAttribute(String attribute) {
+            Counter counter = counters.get(attribute);
+            if (counter != null) return counter.get();
+            int dot = attribute.lastIndexOf('.');
+            Histogram histogram = dot < 0 ? null : histograms.get(attribute.substring(0, dot));
+            if (histogram == null) return null;
+            HistogramSnapshot snapshot = histogram.snapshot();
+            String statistic = attribute.substring(dot + 1);
+            switch (statistic) {
+                case "count": return snapshot.count;
+                case "mean": return snapshot.mean();
+                case "max": return snapshot.max;
+                default:
+                    for (double percentile : PERCENTILES)
+                        if (statistic.equals("p" + percentileName(percentile).replace('.', '_')))
+                            return snapshot.percentile(percentile);
+                    return null;
+            }
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes)
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) {
+            throw new UnsupportedOperationException("the metrics are read only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) {
+            throw new UnsupportedOperationException("the metrics have no operations");
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String name : new TreeMap<>(counters).keySet())
+                attributes.add(new MBeanAttributeInfo(name, "long", "counter", true, false, false));
+            for (String name : new TreeMap<>(histograms).keySet()) {
+                List<String> statistics = new ArrayList<>();
+                statistics.add("count");
+                statistics.add("mean");
+                for (double percentile : PERCENTILES)
+                    statistics.add("p" + percentileName(percentile).replace('.', '_'));
+                statistics.add("max");
+                for (String statistic : statistics)
+                    attributes.add(new MBeanAttributeInfo(name + "." + statistic, "long", "histogram " + statistic,
+                            true, false, false));
+            }
+            return new MBeanInfo(Metrics.class.getName(), "game engine metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, new MBeanOperationInfo[0], null);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package bguspl.set;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A clock that runs a fixed number of times faster than the wall clock (a virtual clock for simulations).
+ * It starts at the wall clock time and is monotonic (it follows System.nanoTime), so with a speedup of 1 it runs at
+ * the rate of the wall clock but is not moved by changes to the system time.
+ */
+public class ScaledClock implements Clock {
+
+    private final double speedup;
+    private final long originMillis;
+    private final long originNanos;
+
+    /**
+     * @param speedup - how many clock milliseconds pass in a real millisecond.
+     */
+    public ScaledClock(double speedup) {
+        if (speedup <= 0) throw new IllegalArgumentException("invalid clock speedup: " + speedup);
+        this.speedup = speedup;
+        this.originMillis = System.currentTimeMillis();
+        this.originNanos = System.nanoTime();
+    }
+
+    @Override
+    public long millis() {
+        return originMillis + (long) ((System.nanoTime() - originNanos) * speedup / TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+    @Override
+    public long toRealNanos(long millis) {
+        return (long) (TimeUnit.MILLISECONDS.toNanos(millis) / speedup);
+    }
+}
@@ -0,0 +1,236 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Finds the legal sets among a collection of cards, for any featureSize from 3 to 64 and any featureCount.
+ * <p>
+ * A set is determined by any featureSize - 1 of its cards: in every feature those cards either all have the same
+ * value (and so does the missing card) or all have different values (and the missing card has the one value left).
+ * For featureSize 3 the sets are exactly the lines of the affine space Z_3^featureCount. So instead of walking all
+ * the combinations of featureSize cards, the finder walks the combinations of featureSize - 1 cards, computes the
+ * card that completes each one and looks up whether it is among the cards (after the last card of the combination,
+ * so each set is found once, in the order a walk of all the combinations would find it). A combination prefix with
+ * a feature that is neither all same nor all different cannot be completed, so the walk skips everything under it.
+ * <p>
+ * The values of a feature are tracked as a bit mask per combination prefix, so extending a prefix by a card costs a few
+ * bitwise operations per feature. For featureSize 3 with a CompletionTable, the card completing each pair is looked up
+ * instead (a pair is never pruned, as two values of a feature are always all same or all different). Searches of at
+ * least parallelCards cards are split by the position of the first card of the combinations across the common
+ * ForkJoinPool; once a part found count sets, the parts after it stop.
+ */
+class SetFinder {
+
+    private final CardCodec codec;
+
+    /**
+     * The card that completes each pair of cards (null to complete the combinations through the feature masks).
+     */
+    private final CompletionTable completions;
+
+    private final int setSize;
+    private final int featureCount;
+
+    /**
+     * The mask of all the values of a feature.
+     */
+    private final long allValues;
+
+    /**
+     * The least number of cards searched in parallel (0 for never).
+     */
+    private final int parallelCards;
+
+    /**
+     * @param codec         - the feature tables of the cards (featureSize between 3 and 64).
+     * @param completions   - the card that completes each pair of cards (for featureSize 3), or null.
+     * @param parallelCards - the least number of cards to search in parallel (0 for never).
+     */
+    SetFinder(CardCodec codec, CompletionTable completions, int parallelCards) {
+        if (codec.featureSize < 3 || codec.featureSize > Long.SIZE)
+            throw new IllegalArgumentException("cannot complete sets of " + codec.featureSize + " cards");
+        this.codec = codec;
+        this.completions = codec.featureSize == 3 ? completions : null;
+        this.setSize = codec.featureSize;
+        this.featureCount = codec.featureCount;
+        this.allValues = setSize == Long.SIZE ? -1L : (1L << setSize) - 1;
+        this.parallelCards = parallelCards;
+    }
+
+    /**
+     * Finds up to count sets in the first length entries of an array of cards.
+     *
+     * @return - the sets (each one sorted), in the order of the combinations of their positions in the array.
+     */
+    List<int[]> find(int[] cards, int length, int count) {
+        if (count <= 0 || length < setSize) return new ArrayList<>();
+        Search search = new Search(cards, length, count);
+        int firstCards = length - setSize + 1; // the positions the first card of a combination can be in
+        if (parallelCards > 0 && length >= parallelCards && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            int grain = Math.max(1, firstCards / (ForkJoinPool.getCommonPoolParallelism() * 16));
+            return ForkJoinPool.commonPool().invoke(new Part(search, 0, firstCards, grain));
+        }
+        return new Walk(search).walk(0, firstCards);
+    }
+
+    /**
+     * The arguments of a search, shared by its parts.
+     */
+    private final class Search {
+
+        private final int[] cards;
+        private final int length;
+        private final int count;
+
+        /**
+         * The position of each card of the deck in cards (-1 if it is not there).
+         */
+        private final int[] position;
+
+        /**
+         * The lowest first position of a part that found count sets (the parts after it are not needed).
+         */
+        private final AtomicInteger fullFrom = new AtomicInteger(Integer.MAX_VALUE);
+
+        private Search(int[] cards, int length, int count) {
+            this.cards = cards;
+            this.length = length;
+            this.count = count;
+            position = new int[codec.deckSize];
+            Arrays.fill(position, -1);
+            for (int i = 0; i < length; ++i)
+                position[cards[i]] = i;
+        }
+    }
+
+    /**
+     * A walk over the combinations whose first card is in a range of positions.
+     */
+    private final class Walk {
+
+        private final Search search;
+
+        /**
+         * The feature value masks of the cards of the current combination prefix, per prefix length - 1.
+         */
+        private final long[][] masks = new long[setSize - 1][featureCount];
+        private final int[] combination = new int[setSize - 1];
+        private final List<int[]> sets = new ArrayList<>();
+        private int from;
+
+        private Walk(Search search) {
+            this.search = search;
+        }
+
+        /**
+         * @return - up to count sets whose first card is at a position in [from, to).
+         */
+        private List<int[]> walk(int from, int to) {
+            this.from = from;
+            for (int i = from; i < to && !stopped(); ++i) {
+                if (completions != null) completePairs(i);
+                else extend(0, i);
+            }
+            return sets;
+        }
+
+        /**
+         * Looks up the card completing the card at position i with each card after it.
+         */
+        private void completePairs(int i) {
+            int[] cards = search.cards;
+            int first = cards[i];
+            for (int j = i + 1; j < search.length - 1 && !stopped(); ++j) {
+                int third = completions.third(first, cards[j]);
+                if (search.position[third] > j) {
+                    int[] set = {first, cards[j], third};
+                    Arrays.sort(set);
+                    sets.add(set);
+                }
+            }
+        }
+
+        private boolean stopped() {
+            return sets.size() >= search.count || from > search.fullFrom.get();
+        }
+
+        /**
+         * Adds the card at position i to the prefix (at index level), and walks on from there.
+         */
+        private void extend(int level, int i) {
+            int card = search.cards[i];
+            long[] mask = masks[level];
+            int distinct = level + 1;
+            for (int f = 0; f < featureCount; ++f) {
+                long m = (level == 0 ? 0 : masks[level - 1][f]) | 1L << codec.feature(card, f);
+                int values = Long.bitCount(m);
+                if (values != 1 && values != distinct) return; // neither all same nor all different
+                mask[f] = m;
+            }
+            combination[level] = i;
+
+            if (level < setSize - 2) {
+                int last = search.length - (setSize - 2 - level);
+                for (int j = i + 1; j < last && !stopped(); ++j)
+                    extend(level + 1, j);
+                return;
+            }
+
+            int completion = 0;
+            for (int f = 0; f < featureCount; ++f) {
+                long m = mask[f];
+                int value = Long.numberOfTrailingZeros(Long.bitCount(m) == 1 ? m : ~m & allValues);
+                completion += value * codec.weight(f);
+            }
+            if (search.position[completion] > i) {
+                int[] set = new int[setSize];
+                for (int k = 0; k < setSize - 1; ++k)
+                    set[k] = search.cards[combination[k]];
+                set[setSize - 1] = completion;
+                Arrays.sort(set);
+                sets.add(set);
+            }
+        }
+    }
+
+    /**
+     * A part of a parallel search: a range of first positions, split in halves down to grain positions.
+     */
+    private final class Part extends RecursiveTask<List<int[]>> {
+
+        private final Search search;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        private Part(Search search, int from, int to, int grain) {
+            this.search = search;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected List<int[]> compute() {
+            if (to - from <= grain) {
+                List<int[]> sets = new Walk(search).walk(from, to);
+                if (sets.size() >= search.count)
+                    search.fullFrom.accumulateAndGet(from, Math::min);
+                return sets;
+            }
+            int middle = (from + to) >>> 1;
+            Part left = new Part(search, from, middle, grain);
+            left.fork();
+            List<int[]> right = new Part(search, middle, to, grain).compute();
+            List<int[]> sets = left.join();
+            if (sets.size() < search.count)
+                sets.addAll(right.subList(0, Math.min(right.size(), search.count - sets.size())));
+            return sets;
+        }
+    }
+}
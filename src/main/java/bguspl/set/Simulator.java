@@ -0,0 +1,166 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Plays many complete games headless, for AI tuning and load testing.
+ * <p>
+ * Every seat is played by a computer player, there is no user interface and no table delay, and the game clock runs
+ * SimulationSpeedup times faster than the wall clock (so turn timeouts and freezes keep their proportions). The games
+ * are rooms of a GameServer with threads for SimulationThreads games at a time, and one line of statistics per game is
+ * written to a csv file in the logs directory.
+ */
+public class Simulator {
+
+    private final Logger logger;
+    private final Config config;
+
+    /**
+     * The configuration of the simulated games.
+     */
+    private final Config gameConfig;
+
+    /**
+     * The (silent) logger of the simulated games.
+     */
+    private final Logger gameLogger;
+
+    private final Util util;
+
+    /**
+     * The engine metrics of all the simulated games.
+     */
+    private final Metrics metrics;
+
+    /**
+     * @param logger     - the main logger.
+     * @param config     - the configuration with the simulation settings.
+     * @param properties - the properties the configuration was loaded from (the simulated games use them too).
+     * @param metrics    - the engine metrics the games record to.
+     */
+    public Simulator(Logger logger, Config config, Properties properties, Metrics metrics) {
+        this.logger = logger;
+        this.config = config;
+        this.metrics = metrics;
+
+        Properties gameProperties = new Properties();
+        gameProperties.putAll(properties);
+        gameProperties.put("LogLevel", "OFF");
+        gameProperties.put("HumanPlayers", "0");
+        gameProperties.put("ComputerPlayers", Integer.toString(config.players));
+        gameProperties.put("Hints", "False");
+        gameProperties.put("TableDelaySeconds", "0");
+        gameProperties.put("EndGamePauseSeconds", "0");
+        gameProperties.put("TurnTimeoutWarningSeconds", "0"); // nobody watches the countdown
+        gameLogger = Logger.getAnonymousLogger();
+        gameLogger.setUseParentHandlers(false);
+        gameConfig = new Config(gameLogger, gameProperties);
+        util = new UtilImpl(gameConfig, metrics);
+    }
+
+    /**
+     * Plays all the games and writes their statistics.
+     *
+     * @throws InterruptedException - if the main thread was interrupted while waiting for the games.
+     */
+    public void run() throws InterruptedException {
+        logger.info("simulating " + config.simulationGames + " games of " + gameConfig.players + " players, "
+                + config.simulationThreads + " at a time, clock speedup " + config.simulationSpeedup + ", seed "
+                + gameConfig.seed + ".");
+
+        int threadsPerGame = 1 + gameConfig.players + gameConfig.computerPlayers;
+        GameServer server = new GameServer(logger, new GameThreads(config, logger),
+                config.simulationThreads * threadsPerGame, config.roomAllocationLimitBytes, metrics);
+        List<GameRoom> rooms = new ArrayList<>(config.simulationGames);
+        long startNanos = System.nanoTime();
+        for (int game = 0; game < config.simulationGames; game++) {
+            GameRoom room = server.open(gameLogger, gameConfig, util, new NullUserInterface(),
+                    new ScaledClock(config.simulationSpeedup));
+            room.start();
+            rooms.add(room);
+        }
+
+        File file = new File("./logs/simulation-" + new SimpleDateFormat("M-d_HH-mm-ss").format(Calendar.getInstance().getTime()) + ".csv");
+        //noinspection ResultOfMethodCallIgnored
+        file.getParentFile().mkdirs();
+        long clockMillis = 0, claims = 0, verdictNanos = 0, maxVerdictNanos = 0;
+        int failed = 0;
+        try (PrintWriter out = new PrintWriter(file)) {
+            out.println(CSV_HEADER);
+            for (GameRoom room : rooms) {
+                room.await();
+                if (room.state() == GameRoom.State.FAILED) {
+                    failed++;
+                    logger.severe("simulated game " + room.id + " failed: " + room.failure());
+                } else {
+                    clockMillis += room.gameMillis();
+                    claims += room.dealer().claimsJudged();
+                    verdictNanos += room.dealer().claimsJudged() * room.dealer().averageVerdictNanos();
+                    maxVerdictNanos = Math.max(maxVerdictNanos, room.dealer().maxVerdictNanos());
+                    out.println(toCsv(room));
+                }
+            }
+        } catch (IOException e) {
+            logger.severe("cannot write simulation results to " + file + ": " + e.getMessage());
+        } finally {
+            server.shutdown();
+        }
+
+        long realMillis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        int played = rooms.size() - failed;
+        String summary = "simulated " + played + " games (" + failed + " failed) in " + realMillis + "ms: "
+                + played * TimeUnit.MINUTES.toMillis(1) / realMillis + " games/min, average game "
+                + (played == 0 ? 0 : clockMillis / played) + "ms of game time, peak threads " + server.peakTasks()
+                + ", " + claims * TimeUnit.SECONDS.toMillis(1) / realMillis + " claims/s, claim to verdict latency: average "
+                + TimeUnit.NANOSECONDS.toMicros(claims == 0 ? 0 : verdictNanos / claims) + "us, max "
+                + TimeUnit.NANOSECONDS.toMicros(maxVerdictNanos) + "us. results: " + file;
+        logger.info(summary);
+        System.out.println(summary);
+        if (metrics != Metrics.NONE)
+            logger.info("engine metrics:" + System.lineSeparator() + metrics.snapshot());
+    }
+
+    private static final String CSV_HEADER = "game,seed,clockMillis,realMillis,reshuffles,claims,staleClaims,"
+            + "verdictMicrosAverage,verdictMicrosMax,points,penalties,scores,playerPenalties,winners,peakThreads,"
+            + "allocatedBytes";
+
+    /**
+     * @param room - a finished room.
+     * @return - the statistics of the room's game as a csv line.
+     */
+    private static String toCsv(GameRoom room) {
+        Player[] players = room.players();
+        int points = 0, penalties = 0, max = -1;
+        for (Player player : players) {
+            points += player.score();
+            penalties += player.penalties();
+            max = Math.max(max, player.score());
+        }
+        StringBuilder scores = new StringBuilder(), playerPenalties = new StringBuilder(), winners = new StringBuilder();
+        for (Player player : players) {
+            String separator = scores.length() == 0 ? "" : " ";
+            scores.append(separator).append(player.score());
+            playerPenalties.append(separator).append(player.penalties());
+            if (player.score() == max) winners.append(winners.length() == 0 ? "" : " ").append(player.id);
+        }
+
+        Dealer dealer = room.dealer();
+        return room.id + "," + room.env.seed + "," + room.gameMillis() + "," + TimeUnit.NANOSECONDS.toMillis(room.realNanos()) + ","
+                + dealer.reshuffles() + "," + dealer.claimsJudged() + "," + dealer.staleClaims() + ","
+                + TimeUnit.NANOSECONDS.toMicros(dealer.averageVerdictNanos()) + ","
+                + TimeUnit.NANOSECONDS.toMicros(dealer.maxVerdictNanos()) + "," + points + "," + penalties + "," + scores
+                + "," + playerPenalties + "," + winners + "," + room.peakTasks() + "," + room.allocatedBytes();
+    }
+}
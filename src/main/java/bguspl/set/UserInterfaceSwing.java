@@ -4,10 +4,14 @@ import bguspl.set.ex.Player;
 
 import javax.swing.*;
 import java.awt.*;
-import java.io.FileNotFoundException;
-import java.net.URL;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -15,22 +19,81 @@ import static java.lang.String.format;
 
 /**
  * Java Swing implementation of the UserInterface interface.
+ * <p>
+ * The UserInterface methods are called by the game threads, so they never touch Swing: each call only queues a small
+ * event (the countdown is not even queued, only its latest value is kept). A Swing timer on the event dispatch thread
+ * applies all the queued events once a frame, so a burst of calls (e.g. clearing the whole table) costs a single
+ * repaint, and the game threads never wait for rendering.
  */
 public class UserInterfaceSwing extends JFrame implements UserInterface {
 
+    /**
+     * The interval between frames (about 60 frames per second).
+     */
+    private static final int FRAME_MILLIS = 16;
+
     private final TimerPanel timerPanel;
     private final GamePanel gamePanel;
     private final PlayersPanel playersPanel;
     private final WinnerPanel winnerPanel;
     private final Config config;
+    private final Logger logger;
+
+    /**
+     * The card images, decoded in the background.
+     */
+    private final CardImages cardImages;
+
+    /**
+     * The UI calls waiting for the next frame.
+     */
+    private final ConcurrentLinkedQueue<Event> events = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The latest countdown set since the last frame (millies * 2 + 1 if warn), or NO_COUNTDOWN.
+     */
+    private final AtomicLong countdown = new AtomicLong(NO_COUNTDOWN);
+    private static final long NO_COUNTDOWN = -1;
+
+    /**
+     * Runs the frames on the event dispatch thread.
+     */
+    private final Timer frameTimer;
+
+    private enum EventType {
+        PLACE_CARD, REMOVE_CARD, PLACE_TOKEN, REMOVE_TOKEN, REMOVE_SLOT_TOKENS, REMOVE_ALL_TOKENS, ELAPSED, FREEZE,
+        SCORE, WINNER, IMAGE_LOADED
+    }
+
+    /**
+     * A queued UI call (the fields used depend on the type).
+     */
+    private static final class Event {
+
+        private final EventType type;
+        private final int player;
+        private final int slot;
+        private final long value;
+        private final int[] players;
+
+        private Event(EventType type, int player, int slot, long value, int[] players) {
+            this.type = type;
+            this.player = player;
+            this.slot = slot;
+            this.value = value;
+            this.players = players;
+        }
+    }
 
     static String intInBaseToPaddedString(int n, int padding, int base) {
         return format("%" + padding + "s", Integer.toString(n, base)).replace(' ', '0');
     }
 
-    public UserInterfaceSwing(Logger logger, Config config, Player[] players) {
+    public UserInterfaceSwing(Logger logger, GameLog log, Config config, Player[] players) {
 
         this.config = config;
+        this.logger = logger;
+        cardImages = new CardImages(logger, config, card -> post(EventType.IMAGE_LOADED, -1, -1, card));
         timerPanel = new TimerPanel();
         gamePanel = new GamePanel();
         playersPanel = new PlayersPanel();
@@ -63,10 +126,49 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         setLocationRelativeTo(null);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
-        addKeyListener(new InputManager(logger, config, players));
+        addKeyListener(new InputManager(log, config, players));
         addWindowListener(new WindowManager());
 
-        EventQueue.invokeLater(() -> setVisible(true));
+        frameTimer = new Timer(FRAME_MILLIS, e -> applyFrame());
+        frameTimer.setCoalesce(true);
+        EventQueue.invokeLater(() -> {
+            setVisible(true);
+            frameTimer.start();
+        });
+    }
+
+    /**
+     * Applies all the UI calls since the last frame. Runs on the event dispatch thread.
+     */
+    private void applyFrame() {
+        long latestCountdown = countdown.getAndSet(NO_COUNTDOWN);
+        if (latestCountdown != NO_COUNTDOWN)
+            timerPanel.setCountdown(latestCountdown >> 1, (latestCountdown & 1) != 0);
+
+        for (Event event = events.poll(); event != null; event = events.poll()) {
+            switch (event.type) {
+                case PLACE_CARD: gamePanel.placeCard(event.slot, (int) event.value); break;
+                case REMOVE_CARD: gamePanel.removeCard(event.slot); break;
+                case PLACE_TOKEN: gamePanel.placeToken(event.player, event.slot); break;
+                case REMOVE_TOKEN: gamePanel.removeToken(event.player, event.slot); break;
+                case REMOVE_SLOT_TOKENS: gamePanel.removeTokens(event.slot); break;
+                case REMOVE_ALL_TOKENS: gamePanel.removeTokens(); break;
+                case ELAPSED: timerPanel.setElapsed(event.value); break;
+                case FREEZE: playersPanel.setFreeze(event.player, event.value); break;
+                case SCORE: playersPanel.setScore(event.player, (int) event.value); break;
+                case IMAGE_LOADED: gamePanel.imageLoaded((int) event.value); break;
+                case WINNER:
+                    playersPanel.setVisible(false);
+                    winnerPanel.announceWinner(event.players);
+                    winnerPanel.setVisible(true);
+                    break;
+            }
+        }
+        gamePanel.endFrame();
+    }
+
+    private void post(EventType type, int player, int slot, long value) {
+        events.add(new Event(type, player, slot, value, null));
     }
 
     private class TimerPanel extends JPanel {
@@ -102,40 +204,47 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     private class GamePanel extends JLayeredPane {
 
-        private final Image emptyCard;
-        private final Image[] deck;
-        private final Image[][] grid;
+        /**
+         * The card in each slot (-1 for an empty slot).
+         */
+        private final int[] grid;
         private final boolean[][][] playerTokens;
         private final JLabel[][] tokenText;
 
-        private Image loadImageResource(String filename) {
-            URL imageResource = getClass().getClassLoader().getResource(filename);
-            if (imageResource == null)
-                throw new RuntimeException(new FileNotFoundException(filename));
-            return new ImageIcon(imageResource).getImage();
-        }
+        /**
+         * The card images scaled to the current cell size, for the current screen (built on first draw, the empty
+         * card last). Dropped when the panel is resized or moves to a screen with another configuration.
+         */
+        private BufferedImage[] scaled;
+        private GraphicsConfiguration scaledFor;
+        private int cellWidth = config.cellWidth;
+        private int cellHeight = config.cellHeight;
+
+        /**
+         * The slots whose token text or card changed in this frame.
+         */
+        private final boolean[] tokensChanged;
+        private final boolean[] cardsChanged;
+        private final StringBuilder text = new StringBuilder();
+
+        /**
+         * True once the panel was painted for the first time.
+         */
+        private boolean painted;
 
         private GamePanel() {
 
             setPreferredSize(new Dimension(config.columns * config.cellWidth, config.rows * config.cellHeight));
 
-            // init deck and load all pictures from png files
-            assert config.featureSize < 10; // otherwise there will be naming conflicts
-
-            // load the image resources
-            deck = new Image[config.deckSize];
-            for (int i = 0; i < config.deckSize; ++i)
-                deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
-            emptyCard = loadImageResource("cards/empty_card.png");
-
-            grid = new Image[config.rows][config.columns];
+            // init the cards on the table grid as empty cards
+            grid = new int[config.tableSize];
+            Arrays.fill(grid, -1);
             tokenText = new JLabel[config.rows][config.columns];
             playerTokens = new boolean[config.players][config.rows][config.columns];
+            tokensChanged = new boolean[config.tableSize];
+            cardsChanged = new boolean[config.tableSize];
             for (int row = 0; row < config.rows; row++) {
                 for (int column = 0; column < config.columns; column++) {
-                    // init the cards on the table grid as empty cards
-                    grid[row][column] = emptyCard;
-
                     // init the JLabel selection overlay
                     tokenText[row][column] = new JLabel("");
                     tokenText[row][column].setVerticalAlignment(JLabel.TOP);
@@ -146,29 +255,83 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
                     add(tokenText[row][column]);
                 }
             }
+
+            addComponentListener(new ComponentAdapter() {
+                @Override
+                public void componentResized(ComponentEvent e) {
+                    resizeCells();
+                }
+            });
         }
 
-        private void placeCard(int slot, int card) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            grid[row][column] = deck[card];
-            validate();
+        /**
+         * Fits the cells to the panel size: drops the scaled images, moves the token labels and repaints everything.
+         */
+        private void resizeCells() {
+            int width = Math.max(1, getWidth() / config.columns);
+            int height = Math.max(1, getHeight() / config.rows);
+            if (width == cellWidth && height == cellHeight) return;
+            cellWidth = width;
+            cellHeight = height;
+            scaled = null;
+            for (int row = 0; row < config.rows; row++)
+                for (int column = 0; column < config.columns; column++)
+                    tokenText[row][column].setBounds(column * cellWidth, row * cellHeight, cellWidth, cellHeight);
             repaint();
         }
 
+        /**
+         * @param card - the card id, or -1 for the empty card.
+         * @return - the image of the card scaled to the cell size (scaled on first use), or null if the card image
+         * is not decoded yet.
+         */
+        private Image scaledImage(int card) {
+            GraphicsConfiguration configuration = getGraphicsConfiguration();
+            if (scaled == null || configuration != scaledFor) {
+                scaled = new BufferedImage[config.deckSize + 1];
+                scaledFor = configuration;
+            }
+            int index = card < 0 ? config.deckSize : card;
+            if (scaled[index] == null) {
+                Image source = card < 0 ? cardImages.empty() : cardImages.get(card);
+                if (source == null) return null;
+                BufferedImage image = configuration != null
+                        ? configuration.createCompatibleImage(cellWidth, cellHeight, Transparency.TRANSLUCENT)
+                        : new BufferedImage(cellWidth, cellHeight, BufferedImage.TYPE_INT_ARGB);
+                Graphics2D g = image.createGraphics();
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(source, 0, 0, cellWidth, cellHeight, null);
+                g.dispose();
+                scaled[index] = image;
+            }
+            return scaled[index];
+        }
+
+        private void placeCard(int slot, int card) {
+            grid[slot] = card;
+            cardsChanged[slot] = true;
+        }
+
         private void removeCard(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            grid[row][column] = emptyCard;
-            validate();
-            repaint();
+            grid[slot] = -1;
+            cardsChanged[slot] = true;
+        }
+
+        /**
+         * Repaints the slots that show the placeholder of a card whose image is now ready.
+         */
+        private void imageLoaded(int card) {
+            for (int slot = 0; slot < grid.length; slot++)
+                if (grid[slot] == card)
+                    cardsChanged[slot] = true;
         }
 
         private void placeToken(int player, int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
             playerTokens[player][row][column] = true;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            tokensChanged[slot] = true;
         }
 
         private void removeTokens() {
@@ -179,36 +342,80 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         private void removeTokens(int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            for (int player = 0; player < playerTokens.length; player++) {
+            for (int player = 0; player < playerTokens.length; player++)
                 playerTokens[player][row][column] = false;
-                tokenText[row][column].setText(generatePlayersTokenText(row, column));
-            }
+            tokensChanged[slot] = true;
         }
 
         private void removeToken(int player, int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
             playerTokens[player][row][column] = false;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+            tokensChanged[slot] = true;
+        }
+
+        /**
+         * Shows the changes of the frame: updates the token text of the changed slots (once per slot) and repaints
+         * only the cells of the changed cards (Swing merges them into a single paint).
+         */
+        private void endFrame() {
+            for (int slot = 0; slot < tokensChanged.length; slot++) {
+                int row = slot / config.columns;
+                int column = slot % config.columns;
+                if (tokensChanged[slot]) {
+                    tokensChanged[slot] = false;
+                    tokenText[row][column].setText(generatePlayersTokenText(row, column));
+                }
+                if (cardsChanged[slot]) {
+                    cardsChanged[slot] = false;
+                    repaint(column * cellWidth, row * cellHeight, cellWidth, cellHeight);
+                }
+            }
         }
 
         private String generatePlayersTokenText(int row, int column) {
-            String text = "";
+            text.setLength(0);
             for (int player = 0; player < config.players; player++) {
-                if (playerTokens[player][row][column])
-                    text = text.concat(config.playerNames[player] + ", ");
+                if (playerTokens[player][row][column]) {
+                    if (text.length() > 0) text.append(", ");
+                    text.append(config.playerNames[player]);
+                }
             }
-            if (text.length() < 2)
-                return "";
-            return text.substring(0, text.length() - 2);
+            return text.toString();
         }
 
         @Override
         public void paintComponent(Graphics g) {
-            // draw card images
-            for (int row = 0; row < config.rows; row++)
-                for (int column = 0; column < config.columns; column++)
-                    g.drawImage(grid[row][column], (column * config.cellWidth), (row * config.cellHeight), this);
+            // draw the card images of the cells in the clip only
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) clip = new Rectangle(0, 0, getWidth(), getHeight());
+            int firstRow = Math.max(0, clip.y / cellHeight);
+            int lastRow = Math.min(config.rows - 1, (clip.y + clip.height - 1) / cellHeight);
+            int firstColumn = Math.max(0, clip.x / cellWidth);
+            int lastColumn = Math.min(config.columns - 1, (clip.x + clip.width - 1) / cellWidth);
+            for (int row = firstRow; row <= lastRow; row++)
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    Image image = scaledImage(grid[row * config.columns + column]);
+                    if (image != null)
+                        g.drawImage(image, column * cellWidth, row * cellHeight, null);
+                    else
+                        drawPlaceholder(g, column * cellWidth, row * cellHeight);
+                }
+
+            if (!painted) {
+                painted = true;
+                logger.info("first frame painted " + ManagementFactory.getRuntimeMXBean().getUptime()
+                        + "ms after the jvm started.");
+            }
+        }
+
+        /**
+         * Draws a blank card in a cell (while the image of its card is being decoded).
+         */
+        private void drawPlaceholder(Graphics g, int x, int y) {
+            int margin = Math.min(cellWidth, cellHeight) / 16;
+            g.setColor(Color.LIGHT_GRAY);
+            g.fillRoundRect(x + margin, y + margin, cellWidth - 2 * margin, cellHeight - 2 * margin, 4 * margin, 4 * margin);
         }
     }
 
@@ -276,63 +483,67 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
     @Override
     public void placeCard(int card, int slot) {
-        gamePanel.placeCard(slot, card);
+        post(EventType.PLACE_CARD, -1, slot, card);
     }
 
     @Override
     public void removeCard(int slot) {
-        gamePanel.removeCard(slot);
+        post(EventType.REMOVE_CARD, -1, slot, 0);
     }
 
     @Override
     public void placeToken(int player, int slot) {
-        gamePanel.placeToken(player, slot);
+        post(EventType.PLACE_TOKEN, player, slot, 0);
     }
 
     @Override
     public void removeTokens() {
-        gamePanel.removeTokens();
+        post(EventType.REMOVE_ALL_TOKENS, -1, -1, 0);
     }
 
     @Override
     public void removeTokens(int slot) {
-        gamePanel.removeTokens(slot);
+        post(EventType.REMOVE_SLOT_TOKENS, -1, slot, 0);
     }
 
     @Override
     public void removeToken(int player, int slot) {
-        gamePanel.removeToken(player, slot);
+        post(EventType.REMOVE_TOKEN, player, slot, 0);
     }
 
     @Override
     public void setCountdown(long millies, boolean warn) {
-        timerPanel.setCountdown(millies, warn);
+        countdown.set(Math.max(millies, 0) << 1 | (warn ? 1 : 0));
     }
 
     @Override
     public void setElapsed(long millies) {
-        timerPanel.setElapsed(millies);
+        post(EventType.ELAPSED, -1, -1, millies);
     }
 
     @Override
     public void setFreeze(int player, long millies) {
-        playersPanel.setFreeze(player, millies);
+        post(EventType.FREEZE, player, -1, millies);
     }
 
     @Override
     public void setScore(int player, int score) {
-        playersPanel.setScore(player, score);
+        post(EventType.SCORE, player, -1, score);
     }
 
     @Override
     public void announceWinner(int[] players) {
-        playersPanel.setVisible(false);
-        winnerPanel.announceWinner(players);
-        winnerPanel.setVisible(true);
+        events.add(new Event(EventType.WINNER, -1, -1, 0, players.clone()));
     }
 
     @Override
     public void dispose() {
-        super.dispose();
+        // after the events queued so far, so the final state (e.g. the winners) is shown
+        cardImages.shutdown();
+        EventQueue.invokeLater(() -> {
+            applyFrame();
+            frameTimer.stop();
+            super.dispose();
+        });
     }
 }
@@ -1,5 +1,6 @@
 package bguspl.set;
 
+import java.util.BitSet;
 import java.util.List;
 
 /**
@@ -31,6 +32,15 @@ public interface Util {
      */
     boolean testSet(int[] cards);
 
+    /**
+     * Finds the card that completes a pair of cards to a legal set (a pair determines its set when featureSize is 3).
+     *
+     * @param a - a card id.
+     * @param b - another card id.
+     * @return - the card id completing the pair, or -1 if sets are not of 3 cards.
+     */
+    int completeSet(int a, int b);
+
     /**
      * Finds and returns up to count sets in the given collection of cards.
      *
@@ -40,6 +50,33 @@ public interface Util {
      */
     List<int[]> findSets(List<Integer> deck, int count);
 
+    /**
+     * Finds and returns up to count sets in the first length entries of an array of cards.
+     *
+     * @param cards  - an array of card ids.
+     * @param length - the number of entries of the array to search.
+     * @param count  - the maximum number of sets to find.
+     * @return - a list of up to count integer arrays, each one contains the card ids of a legal set.
+     */
+    List<int[]> findSets(int[] cards, int length, int count);
+
+    /**
+     * Checks if there is a legal set in the first length entries of an array of cards (without listing the sets).
+     *
+     * @param cards  - an array of distinct card ids.
+     * @param length - the number of entries of the array to search.
+     * @return - true iff some featureSize of the cards form a legal set.
+     */
+    boolean containsSet(int[] cards, int length);
+
+    /**
+     * Checks if there is a legal set among a collection of cards (without listing the sets).
+     *
+     * @param cards - the card ids in the collection.
+     * @return - true iff some featureSize of the cards form a legal set.
+     */
+    boolean containsSet(BitSet cards);
+
     /**
      * Spin a random number of times (for debugging/testing).
      */
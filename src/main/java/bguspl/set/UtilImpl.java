@@ -1,10 +1,10 @@
 package bguspl.set;
 
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.stream.IntStream;
+import java.util.SplittableRandom;
 
 /**
  * The implementation of the UserInterface interface.
@@ -13,71 +13,188 @@ public class UtilImpl implements Util {
 
     private final Config config;
 
+    /**
+     * The precomputed features of every card in the deck.
+     */
+    private final CardCodec codec;
+
+    /**
+     * Finds sets by completing combinations of featureSize - 1 cards (null if the set size is below 3 or above 64).
+     */
+    private final SetFinder finder;
+
+    /**
+     * The card that completes each pair of cards to a set (null if the set size is not 3).
+     */
+    private final CompletionTable completions;
+
+    /**
+     * The presence bits of the cards containsSet scanned so far, per thread (all clear between calls).
+     */
+    private final ThreadLocal<long[]> presence;
+
+    /**
+     * The cards of the BitSet containsSet was called with, per thread.
+     */
+    private final ThreadLocal<int[]> bitSetCards;
+
+    /**
+     * The random streams of spin, split per thread from a stream seeded with the game seed.
+     */
+    private final SplittableRandom spinRandom;
+    private final ThreadLocal<SplittableRandom> threadSpinRandom;
+
+    /**
+     * The durations of the findSets calls.
+     */
+    private final Metrics.Histogram findSetsNanos;
+
+    /**
+     * The durations of the containsSet calls.
+     */
+    private final Metrics.Histogram containsSetNanos;
+
     public UtilImpl(Config config) {
+        this(config, Metrics.NONE);
+    }
+
+    public UtilImpl(Config config, Metrics metrics) {
         this.config = config;
+        this.findSetsNanos = metrics.histogram("util.findSetsNanos");
+        this.containsSetNanos = metrics.histogram("util.containsSetNanos");
+        this.codec = new CardCodec(config);
+        this.completions = config.featureSize == 3 ? new CompletionTable(codec, config.completionTableBytes) : null;
+        this.finder = config.featureSize >= 3 && config.featureSize <= Long.SIZE
+                ? new SetFinder(codec, completions, config.parallelSearchCards) : null;
+        int words = (codec.deckSize + Long.SIZE - 1) / Long.SIZE;
+        this.presence = ThreadLocal.withInitial(() -> new long[words]);
+        this.bitSetCards = ThreadLocal.withInitial(() -> new int[codec.deckSize]);
+        this.spinRandom = new SplittableRandom(config.seed);
+        this.threadSpinRandom = ThreadLocal.withInitial(this::splitSpinRandom);
     }
 
-    private void cardToFeatures(int card, int[] features) {
-        for (int i = config.featureCount - 1; i >= 0; --i) {
-            features[i] = card % config.featureSize;
-            card /= config.featureSize;
-        }
+    private synchronized SplittableRandom splitSpinRandom() {
+        return spinRandom.split();
+    }
+
+    /**
+     * @return - the card features tables this object works with.
+     */
+    public CardCodec codec() {
+        return codec;
+    }
+
+    /**
+     * @return - the completion tables this object works with (null unless the sets have 3 cards).
+     */
+    CompletionTable completions() {
+        return completions;
     }
 
     @Override
     public int[] cardToFeatures(int card) {
         int[] features = new int[config.featureCount];
-        cardToFeatures(card, features);
+        codec.copyFeatures(card, features);
         return features;
     }
 
     @Override
     public int[][] cardsToFeatures(int[] cards) {
         int[][] features = new int[cards.length][config.featureCount];
-        IntStream.range(0, cards.length).forEach(i -> cardToFeatures(cards[i], features[i]));
+        for (int i = 0; i < cards.length; ++i)
+            codec.copyFeatures(cards[i], features[i]);
         return features;
     }
 
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
-        for (int i = 0; i < config.featureCount; ++i) {
-            boolean sameSame = true, butDifferent = true;
-
-            // check if this features is sameSame in all cards
-            for (int j = 1; j < features.length; ++j)
-                if (features[0][i] != features[j][i]) {
-                    sameSame = false;
-                    break;
-                }
-
-            // check if this feature is butDifferent in all cards
-            for (int j = 1; j < features.length; ++j)
-                for (int k = j; k < features.length; ++k)
-                    if (features[j - 1][i] == features[k][i]) {
-                        butDifferent = false;
-                        break;
-                    }
-
-            if (sameSame == butDifferent) return false;
-        }
-        return true;
+        if (completions != null && cards.length == 3) return completions.third(cards[0], cards[1]) == cards[2];
+        return codec.testSet(cards);
+    }
+
+    @Override
+    public int completeSet(int a, int b) {
+        return completions != null ? completions.third(a, b) : -1;
     }
 
     @Override
     public List<int[]> findSets(List<Integer> deck, int count) {
+        int[] cards = new int[deck.size()];
+        for (int i = 0; i < cards.length; ++i)
+            cards[i] = deck.get(i);
+        return findSets(cards, cards.length, count);
+    }
+
+    @Override
+    public List<int[]> findSets(int[] cards, int length, int count) {
+        long start = findSetsNanos.startNanos();
+        List<int[]> sets = finder != null ? finder.find(cards, length, count) : findCombinations(cards, length, count);
+        findSetsNanos.recordSince(start);
+        return sets;
+    }
+
+    /**
+     * For featureSize 3, scans the cards in order and checks every pair of the card reached with a card before it:
+     * if the card completing the pair was already scanned, there is a set. Each set is found at its last card, so the
+     * scan stops at the shortest prefix that has a set (and a collection without sets cannot be large). The scanned
+     * cards are marked in a bitset over the deck, so a check is a completion lookup and a bit test, with no
+     * allocations. Other set sizes go through findSets.
+     */
+    @Override
+    public boolean containsSet(int[] cards, int length) {
+        if (config.featureSize != 3) return !findSets(cards, length, 1).isEmpty();
+        long start = containsSetNanos.startNanos();
+        long[] seen = presence.get();
+        boolean found = false;
+        int scanned = 0;
+        for (; scanned < length && !found; ++scanned) {
+            int card = cards[scanned];
+            for (int i = 0; i < scanned && !found; ++i) {
+                int third = completions.third(cards[i], card);
+                found = (seen[third >>> 6] & 1L << third) != 0;
+            }
+            seen[card >>> 6] |= 1L << card;
+        }
+        for (int i = 0; i < scanned; ++i)
+            seen[cards[i] >>> 6] = 0;
+        containsSetNanos.recordSince(start);
+        return found;
+    }
+
+    /**
+     * Gathers the cards into a per-thread array in a single pass over the bits, and checks them as an array.
+     */
+    @Override
+    public boolean containsSet(BitSet cards) {
+        int[] scratch = bitSetCards.get();
+        int length = 0;
+        for (int card = cards.nextSetBit(0); card >= 0; card = cards.nextSetBit(card + 1))
+            scratch[length++] = card;
+        return containsSet(scratch, length);
+    }
+
+    /**
+     * Finds sets of featureSize cards by walking all the combinations of the deck (for the sizes SetFinder cannot
+     * complete).
+     */
+    private List<int[]> findCombinations(int[] deck, int length, int count) {
         LinkedList<int[]> sets = new LinkedList<>();
-        int n = deck.size();
+        int n = length;
         int r = config.featureSize;
+        if (n < r) return sets;
         int[] combination = new int[r];
+        int[] cards = new int[r];
 
         for (int i = 0; i < r; ++i)
             combination[i] = i;
 
-        while (combination[r - 1] < deck.size()) {
-            int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
+        while (combination[r - 1] < n) {
+            for (int i = 0; i < r; ++i)
+                cards[i] = deck[combination[i]];
             if (testSet(cards)) {
-                sets.add(cards);
+                int[] set = cards.clone();
+                Arrays.sort(set);
+                sets.add(set);
                 if (sets.size() >= count) return sets;
             }
 
@@ -92,7 +209,7 @@ public class UtilImpl implements Util {
 
     public void spin() {
         if (config.randomSpinMax <= 0) return;
-        long cycles = ThreadLocalRandom.current().nextLong(config.randomSpinMin, config.randomSpinMax);
+        long cycles = threadSpinRandom.get().nextLong(config.randomSpinMin, config.randomSpinMax);
         for (int i = 0; i < cycles; ++i)
             Thread.yield();
     }
@@ -0,0 +1,163 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded single-producer single-consumer ring buffer of key presses (slots, each with the version of the slot it
+ * was meant for, or Table.ANY_VERSION).
+ * <p>
+ * The producer is the thread generating the key presses (the input thread or the AI thread) and the consumer is the
+ * player thread. head and tail only ever grow; the slot written at tail is published by the volatile write of
+ * tail + 1, and a slot is handed back to the producer by the volatile write of head + 1. A waiting thread advertises
+ * itself before re-checking the indexes, so a wake-up cannot be lost between the check and the park.
+ */
+class ActionQueue {
+
+    /**
+     * Returned by take when the queue is empty.
+     */
+    static final int EMPTY = -1;
+
+    private final int[] buffer;
+    private final int[] versions;
+
+    /**
+     * The version of the action taken last (read and written by the consumer only).
+     */
+    private int takenVersion = Table.ANY_VERSION;
+
+    /**
+     * The index of the next action to take (written by the consumer only).
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The index of the next action to add (written by the producer only).
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The index up to which the taken actions were handled (written by the consumer only).
+     */
+    private volatile long handled;
+
+    /**
+     * The threads parked on an empty (consumer) or full (producer) queue, if any.
+     */
+    private volatile Thread consumer;
+    private volatile Thread producer;
+
+    ActionQueue(int capacity) {
+        buffer = new int[capacity];
+        versions = new int[capacity];
+    }
+
+    /**
+     * Adds an action if there is room for it. Called by the producer only.
+     *
+     * @param slot - the slot of the key pressed.
+     * @return - true iff the action was added.
+     */
+    boolean offer(int slot) {
+        return offer(slot, Table.ANY_VERSION);
+    }
+
+    /**
+     * Adds an action if there is room for it. Called by the producer only.
+     *
+     * @param slot    - the slot of the key pressed.
+     * @param version - the version of the slot the key press is meant for, or Table.ANY_VERSION.
+     * @return - true iff the action was added.
+     */
+    boolean offer(int slot, int version) {
+        long t = tail.get();
+        if (t - head.get() == buffer.length) return false;
+        buffer[(int) (t % buffer.length)] = slot;
+        versions[(int) (t % buffer.length)] = version;
+        tail.set(t + 1);
+        Thread waiter = consumer;
+        if (waiter != null) LockSupport.unpark(waiter);
+        return true;
+    }
+
+    /**
+     * Adds an action, parking the producer as long as the queue is full.
+     *
+     * @param slot    - the slot of the key pressed.
+     * @param version - the version of the slot the key press is meant for, or Table.ANY_VERSION.
+     * @throws InterruptedException - if the producer was interrupted while waiting.
+     */
+    void put(int slot, int version) throws InterruptedException {
+        while (!offer(slot, version)) {
+            producer = Thread.currentThread();
+            if (tail.get() - head.get() == buffer.length) LockSupport.park(this);
+            producer = null;
+            if (Thread.interrupted()) throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Takes the next action, parking the consumer if the queue is empty. Called by the consumer only.
+     *
+     * @return - the slot of the next key press, or EMPTY if the consumer was woken up with no action to take
+     * (e.g. by LockSupport.unpark, to check for termination).
+     */
+    int take() {
+        long h = head.get();
+        if (h == tail.get()) {
+            consumer = Thread.currentThread();
+            if (h == tail.get()) LockSupport.park(this);
+            consumer = null;
+            if (h == tail.get()) return EMPTY;
+        }
+        int slot = buffer[(int) (h % buffer.length)];
+        takenVersion = versions[(int) (h % buffer.length)];
+        head.set(h + 1);
+        wakeProducer();
+        return slot;
+    }
+
+    /**
+     * @return - the version of the slot the action taken last was meant for. Called by the consumer only.
+     */
+    int takenVersion() {
+        return takenVersion;
+    }
+
+    /**
+     * Drops all the queued actions. Called by the consumer only.
+     */
+    void clear() {
+        long t = tail.get();
+        head.set(t);
+        handled = t;
+        wakeProducer();
+    }
+
+    /**
+     * Marks all the actions taken so far as handled. Called by the consumer only.
+     */
+    void handled() {
+        handled = head.get();
+    }
+
+    /**
+     * @return - the number of actions that were added but not handled yet (queued or being handled).
+     */
+    int pending() {
+        return (int) (tail.get() - handled);
+    }
+
+    /**
+     * @return - the number of queued actions.
+     */
+    int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    private void wakeProducer() {
+        Thread waiter = producer;
+        if (waiter != null) LockSupport.unpark(waiter);
+    }
+}
@@ -1,13 +1,16 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.Journal;
+import bguspl.set.Metrics;
 
-import java.util.Collections;
-import java.util.LinkedList;
-import java.util.List;
-import java.util.Queue;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.ArrayDeque;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 /**
@@ -27,9 +30,26 @@ public class Dealer implements Runnable {
     private final Player[] players;
 
     /**
-     * The list of card ids that are left in the dealer's deck.
+     * Counted down by each player task when it ends.
      */
-    private final List<Integer> deck;
+    private final CountDownLatch playersDone;
+
+    /**
+     * The card ids that are left in the dealer's deck.
+     */
+    private final Deck deck;
+
+    /**
+     * Whether there are legal sets among the cards in the deck, as of the deck version checkedDeckVersion.
+     */
+    private boolean deckHasSets;
+    private int checkedDeckVersion = -1;
+
+    /**
+     * The order the dealer fills the slots in (shuffled before each deal) and its random stream.
+     */
+    private final int[] slotOrder;
+    private final SplittableRandom slotRandom;
 
     /**
      * True iff game should be terminated.
@@ -41,30 +61,121 @@ public class Dealer implements Runnable {
      */
     private long reshuffleTime = Long.MAX_VALUE;
 
-    private Integer[] cardsToRemove;
+    /**
+     * The interval between countdown display updates during the warning period.
+     */
+    private static final long WARNING_TICK_MILLIS = 10;
 
-    private long whenToWake = Long.MAX_VALUE;
+    /**
+     * The set claims waiting for the dealer's verdict, in the order they arrived (guarded by claimsLock), and the
+     * sequence number of the next claim.
+     */
+    private final ArrayDeque<Claim> claims = new ArrayDeque<>();
+    private long nextClaimSequence;
+    private final ReentrantLock claimsLock = new ReentrantLock();
+    private final Condition claimArrived = claimsLock.newCondition();
 
-    private Thread dealerThread;
+    /**
+     * Statistics of the time between a claim submission and its verdict.
+     */
+    private long claimsJudged;
+    private long staleClaims;
+    private long lastJudgedSequence = -1;
+    private long totalVerdictNanos;
+    private long maxVerdictNanos;
 
-    public final Object dealerLock;
+    /**
+     * The engine metrics of the dealer.
+     */
+    private final Metrics.Counter loopIterations;
+    private final Metrics.Counter reshuffleCount;
+    private final Metrics.Histogram verdictNanos;
+    private final Metrics.Histogram claimQueueDepth;
+    private final Metrics.Counter[] verdictCounts = new Metrics.Counter[Verdict.values().length];
 
+    /**
+     * The number of times the dealer reshuffled the deck (turn timeouts and tables with no sets).
+     */
+    private volatile int reshuffles;
 
+    /**
+     * The possible outcomes of a set claim.
+     */
+    public enum Verdict {
+        /**
+         * The cards form a legal set and were taken off the table.
+         */
+        POINT,
+        /**
+         * The cards do not form a legal set.
+         */
+        PENALTY,
+        /**
+         * The claim no longer applies (some of its slots changed since it was submitted, or the game is over).
+         */
+        STALE
+    }
 
+    /**
+     * A set claim of a player, waiting for the dealer's verdict. The verdict is handed to the claiming thread only.
+     */
+    private static final class Claim {
+
+        private final Player player;
+        private final int[] slots;
+
+        /**
+         * The versions of the slots when the claim was submitted (see Table.version).
+         */
+        private final int[] versions;
+        private final Thread claimer = Thread.currentThread();
+        private final long submittedNanos = System.nanoTime();
+
+        /**
+         * The arrival order of the claim (assigned under claimsLock).
+         */
+        private long sequence;
+        private volatile Verdict verdict;
+
+        private Claim(Player player, int[] slots, int[] versions) {
+            this.player = player;
+            this.slots = slots;
+            this.versions = versions;
+        }
 
+        private void decide(Verdict verdict) {
+            this.verdict = verdict;
+            LockSupport.unpark(claimer);
+        }
+
+        private Verdict await() {
+            boolean interrupted = false;
+            Verdict result;
+            while ((result = verdict) == null) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) interrupted = true;
+            }
+            if (interrupted) claimer.interrupt();
+            return result;
+        }
+    }
 
     public Dealer(Env env, Table table, Player[] players) {
         this.env = env;
         this.table = table;
         this.players = players;
-        deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
-        cardsToRemove=new Integer[env.config.featureSize];
-        this.dealerLock = new Object();
-        for(int i=0 ;i<cardsToRemove.length;i++){
-            cardsToRemove[i]=null;
-        }
-        Collections.shuffle(deck);
-
+        this.playersDone = new CountDownLatch(players.length);
+        deck = new Deck(env.config.deckSize, env.random());
+        slotRandom = env.random();
+        slotOrder = new int[env.config.tableSize];
+        for (int slot = 0; slot < slotOrder.length; slot++)
+            slotOrder[slot] = slot;
+        loopIterations = env.metrics.counter("dealer.loopIterations");
+        reshuffleCount = env.metrics.counter("dealer.reshuffles");
+        verdictNanos = env.metrics.histogram("dealer.verdictNanos");
+        claimQueueDepth = env.metrics.histogram("dealer.claimQueueDepth");
+        for (Verdict verdict : Verdict.values())
+            verdictCounts[verdict.ordinal()] = env.metrics.counter("dealer.verdicts." + verdict.name().toLowerCase());
     }
 
     /**
@@ -72,23 +183,31 @@ public class Dealer implements Runnable {
      */
     @Override
     public void run() {
-        this.dealerThread = Thread.currentThread();
         env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
-        for (Player player : players) {
-            Thread playerThread = new Thread(player, player.id + " ");
-            playerThread.start();
-        }
+        for (Player player : players)
+            env.execute(player.id + " ", () -> {
+                try {
+                    player.run();
+                } finally {
+                    playersDone.countDown();
+                }
+            });
         while (!shouldFinish()) {
-            Collections.shuffle(deck);
-            reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
+            deck.shuffle();
+            reshuffleTime = env.clock.millis() + env.config.turnTimeoutMillis;
             placeCardsOnTable();
             updateTimerDisplay(false);
             timerLoop();
             updateTimerDisplay(false);
             removeAllCardsFromTable();
         }
+        announceWinners(); // before terminate disposes the window, so the winners are drawn on its last frame
         if(!terminate) terminate();
-        announceWinners();
+        try { playersDone.await(); } catch (InterruptedException ignored) {}
+        if (claimsJudged > 0)
+            env.logger.info("judged " + claimsJudged + " claims (" + staleClaims + " stale), claim to verdict latency: "
+                    + "average " + TimeUnit.NANOSECONDS.toMicros(averageVerdictNanos()) + "us, max "
+                    + TimeUnit.NANOSECONDS.toMicros(maxVerdictNanos) + "us.");
         env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
     }
 
@@ -96,24 +215,28 @@ public class Dealer implements Runnable {
      * The inner loop of the dealer thread that runs as long as the countdown did not time out.
      */
     private void timerLoop() {
-        while (!terminate && System.currentTimeMillis() < reshuffleTime) {
-            sleepUntilWokenOrTimeout();
-            updateTimerDisplay(false);
-      //      synchronized (table) {
-                removeCardsFromTable();
-                placeCardsOnTable();
-      //      }
-            while (noSetsAtAll() && !deck.isEmpty()) {
-                removeAllCardsFromTable();
+        boolean tableChanged = true;
+        while (!terminate && env.clock.millis() < reshuffleTime) {
+            loopIterations.increment();
+            if (tableChanged) {
+                while (noSetsAtAll() && !deck.isEmpty()) {
+                    removeAllCardsFromTable();
+                    placeCardsOnTable();
+                    updateTimerDisplay(true);
+                }
+                if (noSetsAtAll() && deck.isEmpty())
+                    return; // no sets left in the game: shouldFinish ends it once the cards are back in the deck
+                if (env.config.hints) table.hints();
+                tableChanged = false;
+            }
+            Claim claim = sleepUntilWokenOrTimeout();
+            if (claim != null && judge(claim)) {
+                removeCardsFromTable(claim.slots);
                 placeCardsOnTable();
                 updateTimerDisplay(true);
+                tableChanged = true;
             }
-            if (noSetsAtAll() && deck.isEmpty()) {
-                terminate();
-                announceWinners();
-                env.logger.info("Thread " + Thread.currentThread().getName() + " terminated.");
-            }
-
+            updateTimerDisplay(false);
         }
     }
 
@@ -124,66 +247,128 @@ public class Dealer implements Runnable {
         for (Player player : players)
             player.terminate();
         env.ui.dispose();
-        terminate = true;
+        claimsLock.lock();
+        try {
+            terminate = true;
+            for (Claim claim : claims) {
+                env.journal.record(Journal.Event.VERDICT, claim.player.id, -1, -1, Verdict.STALE.ordinal());
+                claim.decide(Verdict.STALE);
+            }
+            claims.clear();
+            claimArrived.signal();
+        } finally {
+            claimsLock.unlock();
+        }
+    }
+
+    /**
+     * Submits a set claim and waits for the dealer's verdict. Called from the claiming player's thread.
+     * Claims are judged in the order they arrive, each against the table as it is then: a claim any of whose slots
+     * changed since it was submitted is stale, so two claims on the same cards never both score.
+     *
+     * @param player - the claiming player.
+     * @param slots  - the slots the player placed its tokens on.
+     * @return - the dealer's verdict.
+     */
+    public Verdict claimSet(Player player, int[] slots) {
+        int[] versions = new int[slots.length];
+        for (int i = 0; i < slots.length; i++)
+            versions[i] = table.version(slots[i]);
+        Claim claim = new Claim(player, slots, versions);
+        claimsLock.lock();
+        try {
+            if (terminate) return Verdict.STALE;
+            claim.sequence = nextClaimSequence++;
+            env.journal.recordClaim(player.id, slots);
+            claims.add(claim);
+            claimArrived.signal();
+        } finally {
+            claimsLock.unlock();
+        }
+        return claim.await();
     }
 
     /**
      * Check if the game should be terminated or the game end conditions are met.
+     * The deck is only checked again once its cards changed (see Deck.version); the check stops at the first set and
+     * does not list the sets (see Util.containsSet).
      *
      * @return true iff the game should be finished.
      */
     private boolean shouldFinish() {
-        return terminate || env.util.findSets(deck, 1).size() == 0;
+        if (terminate) return true;
+        if (checkedDeckVersion != deck.version()) {
+            deckHasSets = env.util.containsSet(deck.cards(), deck.size());
+            checkedDeckVersion = deck.version();
+        }
+        return !deckHasSets;
     }
 
+    /**
+     * @return - true iff there are no legal sets among the cards on the table.
+     */
     private boolean noSetsAtAll() {
-        List<Integer> slotToCardsToCheck = new LinkedList<Integer>();
-        for (int i = 0; i < table.slotToCard.length; i++) {
-            if (table.slotToCard[i] != null)
-                slotToCardsToCheck.add(table.slotToCard[i]);
-        }
-        return env.util.findSets(slotToCardsToCheck, 1).isEmpty();
+        return !table.hasSets();
     }
 
-
     /**
-     * Checks cards should be removed from the table and removes them.
+     * Removes the cards of a successful claim from the table (the table removes the tokens placed on them).
+     *
+     * @param slots - the slots of the claimed set.
      */
-    private void removeCardsFromTable() {
-        for(int i=0;i<cardsToRemove.length;i++){
-            if(cardsToRemove[i] != null){
-                int slotToEmpty = cardsToRemove[i];
-                List<Integer>[] tmp = table.getTokenMap();
-                while(!(tmp[cardsToRemove[i]].isEmpty())){
-                    players[tmp[cardsToRemove[i]].get(0)].removeToken(slotToEmpty);
-                }
-                table.removeCard(cardsToRemove[i]);
-                cardsToRemove[i]=null;
-            }
-        }
+    private void removeCardsFromTable(int[] slots) {
+        for (int slot : slots)
+            table.removeCard(slot);
     }
 
     /**
      * Check if any cards can be removed from the deck and placed on the table.
      */
     private void placeCardsOnTable() {
-        List<Integer> slots = IntStream.range(0, env.config.tableSize).boxed().collect(Collectors.toList());
-        Collections.shuffle(slots);
-        for (int slot: slots){
-            if(!deck.isEmpty() && table.slotToCard[slot] == null){
-                Integer cardToPlace = deck.remove(0);
-                table.placeCard(cardToPlace, slot);
+        for (int i = slotOrder.length - 1; i > 0; --i) {
+            int j = slotRandom.nextInt(i + 1);
+            int slot = slotOrder[i];
+            slotOrder[i] = slotOrder[j];
+            slotOrder[j] = slot;
+        }
+        for (int slot: slotOrder){
+            if(!deck.isEmpty() && table.cardAt(slot) == Table.EMPTY){
+                table.placeCard(deck.draw(), slot);
             }
         }
     }
 
     /**
-     * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
+     * Parks the dealer thread until a claim arrives, the countdown display is due for an update or the game is
+     * terminated.
+     *
+     * @return - the next claim to judge, or null if the dealer woke up for any other reason.
      */
-    private void sleepUntilWokenOrTimeout() {
+    private Claim sleepUntilWokenOrTimeout() {
+        long timeout = env.clock.toRealNanos(nextTickMillis());
+        claimsLock.lock();
         try {
-            dealerThread.sleep(1);
-        } catch (InterruptedException ignored) {}
+            while (claims.isEmpty() && !terminate && timeout > 0)
+                timeout = claimArrived.awaitNanos(timeout);
+            if (!claims.isEmpty()) claimQueueDepth.record(claims.size());
+            return claims.poll();
+        } catch (InterruptedException ignored) {
+            return null;
+        } finally {
+            claimsLock.unlock();
+        }
+    }
+
+    /**
+     * @return - the number of milliseconds until the countdown display changes.
+     */
+    private long nextTickMillis() {
+        long remaining = reshuffleTime - env.clock.millis();
+        if (remaining <= 0) return 0;
+        if (remaining <= env.config.turnTimeoutWarningMillis) return Math.min(remaining, WARNING_TICK_MILLIS);
+        long tick = remaining % Table.SECOND_BY_MILLIS;
+        if (tick == 0) tick = Table.SECOND_BY_MILLIS;
+        return Math.min(tick, remaining - env.config.turnTimeoutWarningMillis);
     }
 
     /**
@@ -191,37 +376,29 @@ public class Dealer implements Runnable {
      */
     private void updateTimerDisplay(boolean reset) {
         if (reset && !shouldFinish()) {
-            reshuffleTime = System.currentTimeMillis() + env.config.turnTimeoutMillis;
-            env.ui.setCountdown(reshuffleTime - System.currentTimeMillis(), false);
-        } else if (reshuffleTime - System.currentTimeMillis() > env.config.turnTimeoutWarningMillis)
-            env.ui.setCountdown(reshuffleTime - System.currentTimeMillis(), false);
+            reshuffleTime = env.clock.millis() + env.config.turnTimeoutMillis;
+            env.ui.setCountdown(reshuffleTime - env.clock.millis(), false);
+        } else if (reshuffleTime - env.clock.millis() > env.config.turnTimeoutWarningMillis)
+            env.ui.setCountdown(reshuffleTime - env.clock.millis(), false);
         else
-            env.ui.setCountdown(Math.max(reshuffleTime - System.currentTimeMillis(),0), true);
+            env.ui.setCountdown(Math.max(reshuffleTime - env.clock.millis(),0), true);
     }
 
     /**
      * Returns all the cards from the table to the deck.
      */
     private void removeAllCardsFromTable() {
-        synchronized (this.table) {
-            removeAllTokens();
-            List<Integer> slots = IntStream.range(0, env.config.tableSize).boxed().collect(Collectors.toList());
-            for (int slot : slots) {
-                Integer cardToRemove = table.slotToCard[slot];
-                if (cardToRemove != null) {
-                    table.removeCard(slot);
-                    deck.add(cardToRemove);
-                }
+        for (int slot = 0; slot < env.config.tableSize; slot++) {
+            int cardToRemove = table.cardAt(slot);
+            if (cardToRemove != Table.EMPTY) {
+                table.removeCard(slot);
+                deck.add(cardToRemove);
             }
-            Collections.shuffle(deck);
-        }
-    }
-
-
-    public void removeAllTokens() {
-        for (Player player : players) {
-            player.deleteTokens();
         }
+        deck.shuffle();
+        reshuffles++;
+        reshuffleCount.increment();
+        env.journal.record(Journal.Event.RESHUFFLE, -1, -1, -1, reshuffles);
     }
 
     /**
@@ -251,23 +428,67 @@ public class Dealer implements Runnable {
         env.ui.announceWinner(winners);
     }
 
-    public boolean checkSet(Integer[] myToken) {
-        boolean isSetBool;
-        int[] isSet = new int[env.config.featureSize];
-        for (int i = 0; i < env.config.featureSize; i++) {
-            isSet[i] = table.slotToCard[myToken[i]];
-        }
-        isSetBool = env.util.testSet(isSet);
-        if (isSetBool) {
-            cardsToRemove = myToken;
-            sucSet();
-        }
-        return isSetBool;
+    /**
+     * @return - the number of times the deck was reshuffled.
+     */
+    public int reshuffles() {
+        return reshuffles;
     }
 
-    public void sucSet(){
-        // removeCardsFromTable();
-        updateTimerDisplay(true);
+    /**
+     * @return - the number of claims judged so far (valid once the dealer thread is done).
+     */
+    public long claimsJudged() {
+        return claimsJudged;
+    }
+
+    /**
+     * @return - the number of claims judged stale (valid once the dealer thread is done).
+     */
+    public long staleClaims() {
+        return staleClaims;
+    }
+
+    /**
+     * @return - the average time from a claim submission to its verdict in nanoseconds (valid once the dealer thread
+     * is done).
+     */
+    public long averageVerdictNanos() {
+        return claimsJudged == 0 ? 0 : totalVerdictNanos / claimsJudged;
+    }
+
+    /**
+     * @return - the longest time from a claim submission to its verdict in nanoseconds (valid once the dealer thread
+     * is done).
+     */
+    public long maxVerdictNanos() {
+        return maxVerdictNanos;
     }
-}
 
+    /**
+     * Decides a claim and hands the verdict to the claiming player.
+     *
+     * @param claim - the claim to judge.
+     * @return - true iff the claimed cards form a legal set (and should be removed from the table).
+     */
+    private boolean judge(Claim claim) {
+        assert claim.sequence > lastJudgedSequence : "claim " + claim.sequence + " judged out of order";
+        lastJudgedSequence = claim.sequence;
+        Verdict verdict = Verdict.STALE;
+        int[] cards = new int[claim.slots.length];
+        if (table.snapshotClaim(claim.player.id, claim.slots, claim.versions, cards))
+            verdict = env.util.testSet(cards) ? Verdict.POINT : Verdict.PENALTY;
+        else
+            staleClaims++;
+        env.journal.record(Journal.Event.VERDICT, claim.player.id, -1, -1, verdict.ordinal());
+        claim.decide(verdict);
+
+        long latency = System.nanoTime() - claim.submittedNanos;
+        claimsJudged++;
+        totalVerdictNanos += latency;
+        maxVerdictNanos = Math.max(maxVerdictNanos, latency);
+        verdictNanos.record(latency);
+        verdictCounts[verdict.ordinal()].increment();
+        return verdict == Verdict.POINT;
+    }
+}
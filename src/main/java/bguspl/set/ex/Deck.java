@@ -0,0 +1,111 @@
+package bguspl.set.ex;
+
+import java.util.SplittableRandom;
+
+/**
+ * The dealer's deck: the card ids that are not on the table, kept in a primitive array with a top pointer.
+ * Only the dealer thread uses the deck, so it is not thread safe.
+ *
+ * @inv 0 <= size() <= capacity
+ */
+public class Deck {
+
+    /**
+     * The cards in the deck are cards[0..size), the top of the deck is cards[size - 1].
+     */
+    private final int[] cards;
+
+    private int size;
+
+    /**
+     * The number of times cards were drawn from or added to the deck (shuffling keeps the same cards, so it does not
+     * count).
+     */
+    private int version;
+
+    /**
+     * The random stream used for shuffling.
+     */
+    private final SplittableRandom random;
+
+    /**
+     * Creates a full (unshuffled) deck.
+     *
+     * @param deckSize - the total number of cards.
+     * @param random   - the random stream used for shuffling.
+     */
+    public Deck(int deckSize, SplittableRandom random) {
+        this.cards = new int[deckSize];
+        this.random = random;
+        for (int card = 0; card < deckSize; ++card)
+            cards[card] = card;
+        this.size = deckSize;
+    }
+
+    /**
+     * Shuffles the cards in the deck in place (Fisher-Yates).
+     */
+    public void shuffle() {
+        for (int i = size - 1; i > 0; --i) {
+            int j = random.nextInt(i + 1);
+            int card = cards[i];
+            cards[i] = cards[j];
+            cards[j] = card;
+        }
+    }
+
+    /**
+     * Takes the card at the top of the deck.
+     *
+     * @return - the card id.
+     * @pre - !isEmpty()
+     */
+    public int draw() {
+        if (size == 0) throw new IllegalStateException("the deck is empty");
+        version++;
+        return cards[--size];
+    }
+
+    /**
+     * Returns a card to the top of the deck.
+     *
+     * @param card - the card id.
+     * @pre - size() < capacity
+     */
+    public void add(int card) {
+        if (size == cards.length) throw new IllegalStateException("the deck is full");
+        cards[size++] = card;
+        version++;
+    }
+
+    /**
+     * @return - the number of cards in the deck.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return - a number that changes whenever the cards in the deck change (but not when they are shuffled).
+     */
+    public int version() {
+        return version;
+    }
+
+    /**
+     * @return - true iff there are no cards left in the deck.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Exposes the backing array so the deck can be searched without copying. Only the first size() entries are
+     * cards in the deck, and the array must not be modified.
+     *
+     * @return - the backing array of the deck.
+     */
+    public int[] cards() {
+        return cards;
+    }
+}
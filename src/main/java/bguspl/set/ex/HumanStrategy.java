@@ -0,0 +1,48 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.SplittableRandom;
+
+/**
+ * Plays like the perfect strategy at a human pace and with human mistakes: it takes a reaction time to spot each
+ * set, a delay between key presses, and presses a random slot instead of the right one at the configured error rate.
+ * <p>
+ * Reaction times are log-normally distributed (as human reaction times roughly are) with the configured mean and
+ * standard deviation (a deviation of 0 gives a fixed reaction time).
+ */
+class HumanStrategy extends PerfectStrategy {
+
+    /**
+     * The parameters of the normal distribution whose exponent is the reaction time in milliseconds.
+     */
+    private final double reactionMu;
+    private final double reactionSigma;
+
+    HumanStrategy(Env env, Table table, int player, SplittableRandom random) {
+        super(env, table, player, random);
+        double mean = env.config.computerReactionMillis;
+        double deviation = env.config.computerReactionDeviationMillis;
+        reactionSigma = mean > 0 ? Math.sqrt(Math.log1p(deviation * deviation / (mean * mean))) : 0;
+        reactionMu = mean > 0 ? Math.log(mean) - reactionSigma * reactionSigma / 2 : Double.NEGATIVE_INFINITY;
+    }
+
+    @Override
+    protected void think() throws InterruptedException {
+        env.clock.sleep((long) Math.exp(reactionMu + reactionSigma * nextGaussian()));
+    }
+
+    @Override
+    protected int press(int slot) throws InterruptedException {
+        env.clock.sleep(env.config.computerKeyMillis);
+        return random.nextDouble() < env.config.computerErrorRate ? random.nextInt(env.config.tableSize) : slot;
+    }
+
+    /**
+     * @return - a standard normal value (Box-Muller; SplittableRandom has no nextGaussian before Java 17).
+     */
+    private double nextGaussian() {
+        double u = 1 - random.nextDouble(); // (0, 1], so the log is finite
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+}
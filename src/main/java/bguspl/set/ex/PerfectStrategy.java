@@ -0,0 +1,152 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.SplittableRandom;
+
+/**
+ * Plays the sets on the table without mistakes: picks one of the sets the table keeps an index of, removes the
+ * player's tokens that are not on it and places tokens on its cards.
+ * <p>
+ * The strategy only presses a key once the player handled all the previous ones, so it always decides on the
+ * current tokens of the player (a second press on a slot would take the token off again). If the cards of the
+ * chosen set leave the table (another player took them, or the dealer reshuffled), it picks a new set. Each press
+ * carries the version of its slot as the strategy saw it, so a press meant for a card that the dealer replaced before
+ * the player handled it is dropped instead of placing a token on the new card.
+ * <p>
+ * The tokens of the player are read once per decision from the table's per-player token slots, without locking any
+ * slot.
+ */
+class PerfectStrategy implements PlayerStrategy {
+
+    protected final Env env;
+    protected final SplittableRandom random;
+    private final Table table;
+    private final int player;
+
+    /**
+     * The set the player goes for (valid iff hasTarget): its cards, and the slots they were in when it was chosen.
+     */
+    private final int[] targetCards;
+    private final int[] targetSlots;
+    private boolean hasTarget;
+
+    /**
+     * The versions of the target slots when the cards in them were last checked.
+     */
+    private final int[] targetVersions;
+
+    /**
+     * The version of the slot of the last key press (see version).
+     */
+    private int pressVersion = Table.ANY_VERSION;
+
+    /**
+     * Scratch array for the slots of the player's tokens.
+     */
+    private final int[] tokenSlots;
+
+    PerfectStrategy(Env env, Table table, int player, SplittableRandom random) {
+        this.env = env;
+        this.table = table;
+        this.player = player;
+        this.random = random;
+        this.targetCards = new int[env.config.featureSize];
+        this.targetSlots = new int[env.config.featureSize];
+        this.targetVersions = new int[env.config.featureSize];
+        this.tokenSlots = new int[env.config.featureSize];
+    }
+
+    @Override
+    public int nextSlot(int pendingKeys) throws InterruptedException {
+        if (pendingKeys > 0) return NONE;
+        if (!targetOnTable()) {
+            if (!chooseTarget()) return NONE;
+            think();
+            if (!targetOnTable()) return NONE;
+        }
+
+        int tokens = Math.min(table.tokensOf(player, tokenSlots), tokenSlots.length);
+        for (int i = 0; i < tokens; i++) {
+            int slot = tokenSlots[i];
+            if (isTarget(slot)) continue;
+            int version = table.version(slot); // read before the token check, so it is the version of the token's card
+            if (table.hasToken(player, slot)) return press(slot, version);
+        }
+        for (int i = 0; i < targetSlots.length; i++)
+            if (!contains(tokenSlots, tokens, targetSlots[i])) return press(targetSlots[i], targetVersions[i]);
+        return NONE; // all the tokens are placed: the claim is being judged
+    }
+
+    @Override
+    public int version() {
+        return pressVersion;
+    }
+
+    /**
+     * Called once a new set was chosen, before the first key press for it.
+     *
+     * @throws InterruptedException - if the AI thread was interrupted while waiting.
+     */
+    protected void think() throws InterruptedException {}
+
+    /**
+     * Called for every key press the strategy decided on.
+     *
+     * @param slot - the slot of the key to press.
+     * @return - the slot of the key actually pressed.
+     * @throws InterruptedException - if the AI thread was interrupted while waiting.
+     */
+    protected int press(int slot) throws InterruptedException {
+        return slot;
+    }
+
+    /**
+     * Presses a key for the card of a version of its slot (a press the press hook changed is for any card).
+     */
+    private int press(int slot, int version) throws InterruptedException {
+        int pressed = press(slot);
+        pressVersion = pressed == slot ? version : Table.ANY_VERSION;
+        return pressed;
+    }
+
+    /**
+     * Picks a random set among the sets on the table.
+     *
+     * @return - true iff there was a set to pick.
+     */
+    private boolean chooseTarget() {
+        hasTarget = table.pickSet(random.nextInt(), targetCards) > 0;
+        if (hasTarget)
+            for (int i = 0; i < targetCards.length; i++)
+                targetSlots[i] = table.slotOf(targetCards[i]);
+        return hasTarget;
+    }
+
+    /**
+     * Also reads the versions of the target slots (before their cards, so they are the versions of the target cards).
+     *
+     * @return - true iff the cards of the chosen set are still in their slots.
+     */
+    private boolean targetOnTable() {
+        if (!hasTarget) return false;
+        for (int i = 0; i < targetSlots.length; i++) {
+            if (targetSlots[i] == Table.EMPTY) return false;
+            targetVersions[i] = table.version(targetSlots[i]);
+            if (table.cardAt(targetSlots[i]) != targetCards[i]) return false;
+        }
+        return true;
+    }
+
+    private static boolean contains(int[] slots, int count, int slot) {
+        for (int i = 0; i < count; i++)
+            if (slots[i] == slot) return true;
+        return false;
+    }
+
+    private boolean isTarget(int slot) {
+        for (int target : targetSlots)
+            if (target == slot) return true;
+        return false;
+    }
+}
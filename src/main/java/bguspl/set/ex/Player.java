@@ -1,10 +1,13 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.Journal;
+import bguspl.set.Metrics;
 
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This class manages the players' threads and data
@@ -32,12 +35,23 @@ public class Player implements Runnable {
     /**
      * The thread representing the current player.
      */
-    private Thread playerThread;
+    private volatile Thread playerThread;
 
     /**
-     * The thread of the AI (computer) player (an additional thread used to generate key presses).
+     * The thread of the AI (computer) player (an additional thread used to generate key presses), once its task
+     * started.
      */
-    private Thread aiThread;
+    private volatile Thread aiThread;
+
+    /**
+     * Counted down when the AI task ends.
+     */
+    private final CountDownLatch aiDone = new CountDownLatch(1);
+
+    /**
+     * Guards interrupting the AI thread, so a pooled thread is never interrupted after the AI task left it.
+     */
+    private final ReentrantLock aiLock = new ReentrantLock();
 
     /**
      * True iff the player is human (not a computer player).
@@ -54,14 +68,40 @@ public class Player implements Runnable {
      */
     private int score;
 
+    /**
+     * The number of penalties the player got.
+     */
+    private int penalties;
 
-    private int tokenCounter;
-
-    private Integer myTokens[];
+    /**
+     * Scratch array for the slots of the player's tokens (used by the player thread only).
+     */
+    private final int[] mySlots;
 
     private Dealer dealer;
 
-    private Queue<Integer> actions;
+    /**
+     * The key presses waiting to be handled by the player thread.
+     */
+    private final ActionQueue actions;
+
+    /**
+     * Decides the AI key presses (used by the AI thread only, null for a human player).
+     */
+    private final PlayerStrategy strategy;
+
+    /**
+     * True iff the player is frozen (key presses are dropped).
+     */
+    private volatile boolean frozen;
+
+    /**
+     * The engine metrics of the players (shared by all the players).
+     */
+    private final Metrics.Histogram actionQueueDepth;
+    private final Metrics.Counter keyPresses;
+    private final Metrics.Counter droppedKeyPresses;
+    private final Metrics.Counter frozenMillis;
 
 
     /**
@@ -79,12 +119,14 @@ public class Player implements Runnable {
         this.table = table;
         this.id = id;
         this.human = human;
-        this.tokenCounter = 0;
-        this.myTokens = new Integer[env.config.featureSize];
-        for (int i = 0; i < myTokens.length; i++) {
-            myTokens[i] = -1;
-        }
-        this.actions = new LinkedList<Integer>();
+        this.mySlots = new int[env.config.featureSize];
+        this.actions = new ActionQueue(env.config.featureSize);
+        SplittableRandom random = env.random();
+        this.strategy = human ? null : PlayerStrategy.create(env.config.computerStrategy, env, table, id, random);
+        this.actionQueueDepth = env.metrics.histogram("player.actionQueueDepth");
+        this.keyPresses = env.metrics.counter("player.keyPresses");
+        this.droppedKeyPresses = env.metrics.counter("player.droppedKeyPresses");
+        this.frozenMillis = env.metrics.counter("player.frozenMillis");
     }
 
     /**
@@ -97,49 +139,55 @@ public class Player implements Runnable {
         if (!human) createArtificialIntelligence();
 
         while (!terminate) {
-            if (!actions.isEmpty()) {
-                int slotAction = actions.remove();
-                System.out.println(slotAction);
-                if (table.slotToCard[slotAction]!=null) {
-                    if (hasToken(slotAction)) {
-                        System.out.println("has token");
-                        removeToken(slotAction);
-                    }
-                    else {
-                        System.out.println(" not has token");
-                        placeToken(slotAction);
-                    }
-                } else {
-                    System.out.println("not in if");
-                }
+            actionQueueDepth.record(actions.size());
+            int slotAction = actions.take();
+            if (slotAction != ActionQueue.EMPTY && table.cardAt(slotAction) != Table.EMPTY) {
+                if (hasToken(slotAction))
+                    removeToken(slotAction);
+                else
+                    placeToken(slotAction, actions.takenVersion());
             }
-            // TODO implement main player loop
+            actions.handled();
+            Thread ai = aiThread;
+            if (ai != null) LockSupport.unpark(ai); // the strategy may wait for the key press to be handled
         }
-        if (!human) try { aiThread.join(); } catch (InterruptedException ignored) {}
+        if (!human) try { aiDone.await(); } catch (InterruptedException ignored) {}
         env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
     }
 
     /**
-     * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
-     * key presses. If the queue of key presses is full, the thread waits until it is not full.
+     * Starts an additional task for an AI (computer) player. The main loop of this task repeatedly asks the player's
+     * strategy for key presses. If the queue of key presses is full, the task waits until it is not full.
      */
     private void createArtificialIntelligence() {
-        // note: this is a very, very smart AI (!)
-         aiThread = new Thread(() -> {
+        env.execute("computer-" + id, () -> {
+            aiThread = Thread.currentThread(); // published before checking terminate, so terminate can interrupt it
             env.logger.info("thread " + Thread.currentThread().getName() + " starting.");
             while (!terminate) {
-                Random r = new Random();
-                int slotAction = r.nextInt(env.config.tableSize);
-                System.out.println(slotAction);
-                keyPressed(slotAction);
-                // TODO implement player key press simulator
-                    try {
-                        synchronized (this) { wait(); }
-                    } catch (InterruptedException ignored) {}
+                if (frozen) {
+                    LockSupport.park(this); // woken up by unFreeze
+                    continue;
+                }
+                try {
+                    int slotAction = strategy.nextSlot(actions.pending());
+                    if (slotAction == PlayerStrategy.NONE) {
+                        LockSupport.parkNanos(this, env.clock.toRealNanos(PlayerStrategy.IDLE_MILLIS));
+                        continue;
+                    }
+                    actions.put(slotAction, strategy.version());
+                    keyPresses.increment();
+                } catch (InterruptedException ignored) {}
+            }
+            aiLock.lock();
+            try {
+                aiThread = null;
+                Thread.interrupted(); // a late interrupt from terminate
+            } finally {
+                aiLock.unlock();
             }
             env.logger.info("thread " + Thread.currentThread().getName() + " terminated.");
-        }, "computer-" + id);
-        aiThread.start();
+            aiDone.countDown();
+        });
     }
 
     /**
@@ -147,8 +195,17 @@ public class Player implements Runnable {
      */
     public void terminate() {
         terminate = true;
-        if (!human)
-            aiThread.interrupt();
+        aiLock.lock();
+        try {
+            Thread thread = aiThread;
+            if (thread != null)
+                thread.interrupt();
+        } finally {
+            aiLock.unlock();
+        }
+        Thread thread = playerThread;
+        if (thread != null)
+            LockSupport.unpark(thread);
     }
 
 
@@ -159,12 +216,9 @@ public class Player implements Runnable {
      * @param slot - the slot corresponding to the key pressed.
      */
     public void keyPressed(int slot) {
-        try {
-            synchronized (actions) {
-                actions.add(slot);
-                actions.notifyAll();
-            }
-        } catch (IllegalStateException ignored) {}
+        keyPresses.increment();
+        if (frozen || !actions.offer(slot))
+            droppedKeyPresses.increment();
     }
 
     /**
@@ -177,99 +231,95 @@ public class Player implements Runnable {
         score++;
         int ignored = table.countCards(); // this part is just for demonstration in the unit tests
         env.ui.setScore(id, score);
+        env.journal.record(Journal.Event.SCORE, id, -1, -1, score);
         setFreeze(env.config.pointFreezeMillis);
     }
 
+    /**
+     * Places a token on a slot (if the player has tokens left), and claims a set once all the tokens are placed.
+     * The player's tokens are kept by the table only, so the dealer removing cards (and the tokens on them) never
+     * has to touch the player's state.
+     *
+     * @param slot - the slot to place the token on.
+     */
     public void placeToken(int slot) {
-        System.out.println("place token");
-        if (tokenCounter < env.config.featureSize) {
-            boolean isfound = false;
-            for (int i = 0; i < myTokens.length && !isfound; i++) {
-                if (myTokens[i] == -1) {
-                    myTokens[i] = slot;
-                    isfound = true;
-                }
-            }
-            tokenCounter++;
-            table.placeToken(id, slot);
-            if (tokenCounter == env.config.featureSize) {
-                boolean isSet;
-                //   table.setsDeclared.add(id);
-                Integer[] setCopy = new Integer[env.config.featureSize];
-                for (int i = 0; i < setCopy.length; i++)
-                    setCopy[i] = myTokens[i];
-                isSet = dealer.checkSet(setCopy);
-                if (isSet)
-                    point();
-                else {
-                    penalty();
-                }
-
-            }
-
-        }
+        placeToken(slot, Table.ANY_VERSION);
     }
 
-
-    public void removeToken(int slot) {
-        boolean found = false;
-        for (int i = 0; i < myTokens.length && !found; i++) {
-            if (myTokens[i] == slot) {
-                myTokens[i] = -1;
-                tokenCounter--;
-                found = true;
-                table.removeToken(id, slot);
-            }
+    /**
+     * Places a token on a slot as above, unless the card in the slot changed since the key press was decided on.
+     *
+     * @param slot    - the slot to place the token on.
+     * @param version - the version of the slot the key press is meant for (see Table.version), or Table.ANY_VERSION.
+     */
+    private void placeToken(int slot, int version) {
+        if (table.tokenCount(id) >= env.config.featureSize || !table.placeToken(id, slot, version))
+            return;
+        if (table.tokensOf(id, mySlots) == env.config.featureSize) {
+            Dealer.Verdict verdict = dealer.claimSet(this, mySlots.clone());
+            if (verdict == Dealer.Verdict.POINT)
+                point();
+            else if (verdict == Dealer.Verdict.PENALTY)
+                penalty();
         }
     }
 
-    public void deleteTokens() {
-        for (int i = 0; i < env.config.featureSize; i++) {
-            if (myTokens[i] != -1) {
-                table.removeToken(id, myTokens[i]);
-                tokenCounter--;
-                myTokens[i] = -1;
-            }
-        }
+    public void removeToken(int slot) {
+        table.removeToken(id, slot);
     }
 
     /**
      * Penalize a player and perform other related actions.
      */
     public void penalty() {
+        penalties++;
         setFreeze(env.config.penaltyFreezeMillis);
     }
 
+    /**
+     * Freezes the player, counting down the freeze display once a (clock) second.
+     *
+     * @param millies - the freeze duration in clock milliseconds.
+     */
     public void setFreeze(long millies) {
+        frozen = true;
+        frozenMillis.add(millies);
         try {
             while (millies > 0) {
                 env.ui.setFreeze(id, millies);
-                Thread.sleep(millies);
-                millies = millies - Table.SECOND_BY_MILLIS;
+                env.journal.record(Journal.Event.FREEZE, id, -1, -1, millies);
+                long step = Math.min(millies, Table.SECOND_BY_MILLIS);
+                env.clock.sleep(step);
+                millies -= step;
             }
             env.ui.setFreeze(id, 0);
-            unFreeze();
-            actions.clear();
-        }catch (InterruptedException e){
+            env.journal.record(Journal.Event.FREEZE, id, -1, -1, 0);
+        } catch (InterruptedException ignored) {
         }
+        actions.clear();
+        unFreeze();
     }
 
     public void unFreeze() {
-        synchronized (actions) {
-            actions.notifyAll();
-        }
+        frozen = false;
+        Thread thread = aiThread;
+        if (thread != null)
+            LockSupport.unpark(thread);
     }
 
     public int score() {
         return score;
     }
 
+    /**
+     * @return - the number of penalties the player got.
+     */
+    public int penalties() {
+        return penalties;
+    }
+
 
     public boolean hasToken(int slot) {
-        boolean hasToken = false;
-        for (int i = 0; i < myTokens.length && !hasToken; i++)
-            if (myTokens[i] == slot)
-                hasToken = true;
-        return hasToken;
+        return table.hasToken(id, slot);
     }
 }
\ No newline at end of file
@@ -0,0 +1,62 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.SplittableRandom;
+
+/**
+ * Decides the key presses of a computer player (see the ComputerStrategy setting).
+ * <p>
+ * A strategy is used by its player's AI thread only, so it keeps its state in plain preallocated fields. nextSlot
+ * is called for every key press and must not allocate, so thousands of computer players can play at once.
+ */
+public interface PlayerStrategy {
+
+    /**
+     * Returned by nextSlot when there is no key to press now.
+     */
+    int NONE = -1;
+
+    /**
+     * The most clock milliseconds the AI waits before asking a strategy again when it returned NONE (it asks again
+     * as soon as the player handled a key press or got a verdict).
+     */
+    long IDLE_MILLIS = 250;
+
+    /**
+     * Decides the next key press. A strategy may block on the game clock first (e.g. for a reaction time).
+     *
+     * @param pendingKeys - the number of key presses of the player that its thread did not handle yet.
+     * @return - the slot of the key to press, or NONE to press nothing now.
+     * @throws InterruptedException - if the AI thread was interrupted while waiting.
+     */
+    int nextSlot(int pendingKeys) throws InterruptedException;
+
+    /**
+     * @return - the version of the slot (see Table.version) that the key press nextSlot returned last was decided on,
+     * so the player drops the press if the card in the slot changed since; or Table.ANY_VERSION for any card.
+     */
+    default int version() {
+        return Table.ANY_VERSION;
+    }
+
+    /**
+     * Creates the strategy of a computer player.
+     *
+     * @param name   - the strategy name: random, perfect or human.
+     * @param env    - the game environment.
+     * @param table  - the game table.
+     * @param player - the id of the player.
+     * @param random - the random stream of the player's key presses.
+     * @return - the strategy.
+     * @throws IllegalArgumentException - if there is no strategy with the name (Config already checked the setting).
+     */
+    static PlayerStrategy create(String name, Env env, Table table, int player, SplittableRandom random) {
+        switch (name.toLowerCase()) {
+            case "random": return new RandomStrategy(env, random);
+            case "perfect": return new PerfectStrategy(env, table, player, random);
+            case "human": return new HumanStrategy(env, table, player, random);
+            default: throw new IllegalArgumentException("unknown computer player strategy: " + name);
+        }
+    }
+}
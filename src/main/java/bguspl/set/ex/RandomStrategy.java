@@ -0,0 +1,24 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.util.SplittableRandom;
+
+/**
+ * Presses random slots as fast as the player handles them (the original computer player).
+ */
+class RandomStrategy implements PlayerStrategy {
+
+    private final int tableSize;
+    private final SplittableRandom random;
+
+    RandomStrategy(Env env, SplittableRandom random) {
+        this.tableSize = env.config.tableSize;
+        this.random = random;
+    }
+
+    @Override
+    public int nextSlot(int pendingKeys) {
+        return random.nextInt(tableSize);
+    }
+}
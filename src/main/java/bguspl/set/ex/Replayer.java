@@ -0,0 +1,165 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+import bguspl.set.Journal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Replays a game journal (see bguspl.set.Journal) on a table and its user interface.
+ * <p>
+ * The events are applied in the order they were recorded, each one at its recorded time on the clock of the
+ * environment, so the replay runs at the speed of that clock (e.g. a ScaledClock with a speedup of 10 replays ten
+ * times faster). Times are measured from the start of the replay rather than between events, so the table delays of
+ * the replaying table do not add up.
+ * <p>
+ * Events that do not apply to the table as it is (e.g. a token on an empty slot) are counted as divergences: a
+ * journal replayed on an empty table of the same size has none.
+ */
+public class Replayer {
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The table the cards and tokens are placed on.
+     */
+    private final Table table;
+
+    /**
+     * The score and the number of penalties of each player, as replayed so far.
+     */
+    private final int[] scores;
+    private final int[] penalties;
+
+    private int reshuffles;
+    private int divergences;
+
+    public Replayer(Env env, Table table) {
+        this.env = env;
+        this.table = table;
+        this.scores = new int[env.config.players];
+        this.penalties = new int[env.config.players];
+    }
+
+    /**
+     * Replays a journal file and announces the winners at the end.
+     *
+     * @param file - the journal file.
+     * @throws IOException          - if the file cannot be read or does not match the table.
+     * @throws InterruptedException - if the thread is interrupted while waiting for an event.
+     */
+    public void replay(Path file) throws IOException, InterruptedException {
+        int[] header = Journal.readHeader(file);
+        if (header[0] != env.config.tableSize || header[1] != env.config.players)
+            throw new IOException("the journal is of a game with " + header[0] + " slots and " + header[1]
+                    + " players, the table has " + env.config.tableSize + " slots and " + env.config.players + " players");
+        env.logger.info("replaying " + file + ".");
+        replay(Journal.read(file));
+        announceWinners();
+        env.logger.info("replayed " + file + ": " + reshuffles + " reshuffles, " + divergences + " divergences.");
+    }
+
+    /**
+     * Replays journal records.
+     *
+     * @param records - the records, in the order they were recorded.
+     * @throws InterruptedException - if the thread is interrupted while waiting for an event.
+     */
+    public void replay(List<Journal.Record> records) throws InterruptedException {
+        long startMillis = env.clock.millis();
+        for (Journal.Record record : records) {
+            long wait = startMillis + record.millis - env.clock.millis();
+            if (wait > 0) env.clock.sleep(wait);
+            apply(record);
+        }
+    }
+
+    /**
+     * Applies a single event to the table and the user interface.
+     *
+     * @param record - the event.
+     */
+    public void apply(Journal.Record record) {
+        switch (record.event) {
+            case CARD_PLACED:
+                if (table.cardAt(record.slot) != Table.EMPTY || table.slotOf(record.card) != Table.EMPTY) divergences++;
+                table.placeCard(record.card, record.slot);
+                break;
+            case CARD_REMOVED:
+                if (table.cardAt(record.slot) != record.card) divergences++;
+                table.removeCard(record.slot);
+                break;
+            case TOKEN_PLACED:
+                if (!table.placeToken(record.player, record.slot)) divergences++;
+                break;
+            case TOKEN_REMOVED:
+                if (!table.removeToken(record.player, record.slot)) divergences++;
+                break;
+            case VERDICT:
+                if (record.value == Dealer.Verdict.PENALTY.ordinal()) penalties[record.player]++;
+                break;
+            case SCORE:
+                scores[record.player] = (int) record.value;
+                env.ui.setScore(record.player, scores[record.player]);
+                break;
+            case FREEZE:
+                env.ui.setFreeze(record.player, record.value);
+                break;
+            case RESHUFFLE:
+                reshuffles++;
+                break;
+            default: // claims only matter for post-mortems
+        }
+    }
+
+    /**
+     * Displays the players with the highest score.
+     */
+    private void announceWinners() {
+        int max = 0;
+        for (int score : scores)
+            max = Math.max(max, score);
+        int count = 0;
+        for (int score : scores)
+            if (score == max) count++;
+        int[] winners = new int[count];
+        for (int player = 0, i = 0; player < scores.length; player++)
+            if (scores[player] == max) winners[i++] = player;
+        env.ui.announceWinner(winners);
+    }
+
+    /**
+     * @param player - the player id.
+     * @return - the score of the player, as replayed so far.
+     */
+    public int score(int player) {
+        return scores[player];
+    }
+
+    /**
+     * @param player - the player id.
+     * @return - the number of penalties of the player, as replayed so far.
+     */
+    public int penalties(int player) {
+        return penalties[player];
+    }
+
+    /**
+     * @return - the number of reshuffles replayed so far.
+     */
+    public int reshuffles() {
+        return reshuffles;
+    }
+
+    /**
+     * @return - the number of events that did not apply to the table.
+     */
+    public int divergences() {
+        return divergences;
+    }
+}
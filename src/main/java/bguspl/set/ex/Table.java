@@ -1,8 +1,14 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.Journal;
+import bguspl.set.Metrics;
 
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.stream.Collectors;
 
 
@@ -10,6 +16,12 @@ import java.util.stream.Collectors;
  * This class contains the data that is visible to the player.
  *
  * @inv slotToCard[x] == y iff cardToSlot[y] == x
+ *
+ * Concurrency: every slot has its own lock (lock striping), which guards the card in the slot, the tokens on it and
+ * its version. Players placing and removing tokens on different slots never contend, and the dealer only blocks the
+ * slot it is changing. Operations on several slots (snapshotClaim) lock them in ascending slot order. The slots each
+ * player has tokens on are also kept per player (updated under the slot locks, read without locks), so finding the
+ * tokens of a player does not lock every slot.
  */
 public class Table {
 
@@ -19,40 +31,112 @@ public class Table {
     private final Env env;
 
     /**
-     * Mapping between a slot and the card placed in it (null if none).
+     * Marks an empty slot (in slotToCard) or a card that is not on the table (in cardToSlot).
      */
-    protected final Integer[] slotToCard; // card per slot (if any)
+    public static final int EMPTY = -1;
 
     /**
-     * Mapping between a card and the slot it is in (null if none).
+     * Marks a token placement that does not depend on the version of the slot (see placeToken).
      */
-    protected final Integer[] cardToSlot; // slot per card (if any)
+    public static final int ANY_VERSION = -1;
 
-    protected List<Integer>[] tokenMap;
+    /**
+     * Mapping between a slot and the card placed in it (EMPTY if none).
+     */
+    private final int[] slotToCard; // card per slot (if any)
+
+    /**
+     * Mapping between a card and the slot it is in (EMPTY if none).
+     */
+    private final int[] cardToSlot; // slot per card (if any)
 
-    protected Queue<Integer> setsDeclared;
+    /**
+     * The players that have a token on each slot, as a bitmask of tokenWords longs per slot: bit (player % 64) of
+     * tokens[slot * slotStride + player / 64] is set iff the player has a token on the slot. The masks of each slot
+     * are padded to a whole cache line so that players working on different slots do not share one.
+     */
+    private final long[] tokens;
+    private final int tokenWords;
+    private final int slotStride;
+
+    /**
+     * The slots each player has tokens on, as a bitmask of slotWords longs per player: bit (slot % 64) of
+     * playerTokens[player * playerStride + slot / 64] is set iff the player has a token on the slot. Changed together
+     * with tokens under the slot lock, and padded to a whole cache line per player like tokens.
+     */
+    private final AtomicLongArray playerTokens;
+    private final int slotWords;
+    private final int playerStride;
+
+    /**
+     * The number of longs in a cache line.
+     */
+    private static final int CACHE_LINE_LONGS = 8;
+
+    /**
+     * The lock of each slot.
+     */
+    private final ReentrantLock[] slotLocks;
+
+    /**
+     * The number of times the card in each slot has changed.
+     */
+    private final int[] versions;
 
     public static final int SECOND_BY_MILLIS = 1000;
 
+    /**
+     * The legal sets among the cards currently on the table (each one an array of card ids, sorted).
+     * Kept up to date by placeCard and removeCard, guarded by setsLock.
+     */
+    private final List<int[]> sets = new ArrayList<>();
+    private final ReentrantLock setsLock = new ReentrantLock();
+
+    /**
+     * Scratch arrays for indexing the sets of a newly placed card (only the dealer places cards).
+     */
+    private final int[] otherCards;
+    private final int[] candidate;
+    private final int[] combination;
+
+    /**
+     * Counters of the table mutations.
+     */
+    private final Metrics.Counter cardsPlaced;
+    private final Metrics.Counter cardsRemoved;
+    private final Metrics.Counter tokensPlaced;
+    private final Metrics.Counter tokensRemoved;
 
 
     /**
      * Constructor for testing.
      *
      * @param env        - the game environment objects.
-     * @param slotToCard - mapping between a slot and the card placed in it (null if none).
-     * @param cardToSlot - mapping between a card and the slot it is in (null if none).
+     * @param slotToCard - mapping between a slot and the card placed in it (EMPTY if none).
+     * @param cardToSlot - mapping between a card and the slot it is in (EMPTY if none).
      */
-    public Table(Env env, Integer[] slotToCard, Integer[] cardToSlot) {
+    public Table(Env env, int[] slotToCard, int[] cardToSlot) {
 
         this.env = env;
         this.slotToCard = slotToCard;
         this.cardToSlot = cardToSlot;
-        this.tokenMap = (List<Integer>[]) new LinkedList[env.config.tableSize];
-        for (int i = 0; i < tokenMap.length; i++) {
-            tokenMap[i] = new LinkedList<>();
-        }
-        this.setsDeclared = new LinkedList<Integer>();
+        this.tokenWords = (env.config.players + Long.SIZE - 1) / Long.SIZE;
+        this.slotStride = (tokenWords + CACHE_LINE_LONGS - 1) / CACHE_LINE_LONGS * CACHE_LINE_LONGS;
+        this.tokens = new long[env.config.tableSize * slotStride];
+        this.slotWords = (env.config.tableSize + Long.SIZE - 1) / Long.SIZE;
+        this.playerStride = (slotWords + CACHE_LINE_LONGS - 1) / CACHE_LINE_LONGS * CACHE_LINE_LONGS;
+        this.playerTokens = new AtomicLongArray(env.config.players * playerStride);
+        this.slotLocks = new ReentrantLock[env.config.tableSize];
+        for (int i = 0; i < slotLocks.length; i++)
+            slotLocks[i] = new ReentrantLock();
+        this.versions = new int[env.config.tableSize];
+        this.otherCards = new int[env.config.tableSize];
+        this.candidate = new int[env.config.featureSize];
+        this.combination = new int[env.config.featureSize - 1];
+        this.cardsPlaced = env.metrics.counter("table.cardsPlaced");
+        this.cardsRemoved = env.metrics.counter("table.cardsRemoved");
+        this.tokensPlaced = env.metrics.counter("table.tokensPlaced");
+        this.tokensRemoved = env.metrics.counter("table.tokensRemoved");
 
     }
 
@@ -63,20 +147,160 @@ public class Table {
      */
     public Table(Env env) {
 
-        this(env, new Integer[env.config.tableSize], new Integer[env.config.deckSize]);
+        this(env, emptyMapping(env.config.tableSize), emptyMapping(env.config.deckSize));
+    }
+
+    private static int[] emptyMapping(int size) {
+        int[] mapping = new int[size];
+        Arrays.fill(mapping, EMPTY);
+        return mapping;
     }
 
     /**
      * This method prints all possible legal sets of cards that are currently on the table.
      */
     public void hints() {
-        List<Integer> deck = Arrays.stream(slotToCard).filter(Objects::nonNull).collect(Collectors.toList());
-        env.util.findSets(deck, Integer.MAX_VALUE).forEach(set -> {
+        for (int[] set : sets()) {
             StringBuilder sb = new StringBuilder().append("Hint: Set found: ");
             List<Integer> slots = Arrays.stream(set).mapToObj(card -> cardToSlot[card]).sorted().collect(Collectors.toList());
             int[][] features = env.util.cardsToFeatures(set);
             System.out.println(sb.append("slots: ").append(slots).append(" features: ").append(Arrays.deepToString(features)));
-        });
+        }
+    }
+
+    /**
+     * @return - true iff there is at least one legal set among the cards on the table.
+     */
+    public boolean hasSets() {
+        setsLock.lock();
+        try {
+            return !sets.isEmpty();
+        } finally {
+            setsLock.unlock();
+        }
+    }
+
+    /**
+     * @return - a copy of the legal sets among the cards on the table (each one an array of card ids, sorted).
+     */
+    public List<int[]> sets() {
+        setsLock.lock();
+        try {
+            return new ArrayList<>(sets);
+        } finally {
+            setsLock.unlock();
+        }
+    }
+
+    /**
+     * Copies one of the legal sets among the cards on the table, without allocating.
+     *
+     * @param which - picks the set (any int: the set at which modulo the number of sets is copied).
+     * @param cards - an array to fill with the cards of the set (sorted).
+     * @return - the number of sets on the table (if 0, cards is left as is).
+     */
+    public int pickSet(int which, int[] cards) {
+        setsLock.lock();
+        try {
+            int count = sets.size();
+            if (count > 0)
+                System.arraycopy(sets.get(Math.floorMod(which, count)), 0, cards, 0, cards.length);
+            return count;
+        } finally {
+            setsLock.unlock();
+        }
+    }
+
+    /**
+     * Adds the legal sets that a newly placed card forms with the other cards on the table, by testing it against
+     * every combination of featureSize - 1 of the other cards. For the standard game a pair determines its set, so
+     * the card completing the new card with each other card is looked up instead (see Util.completeSet).
+     *
+     * @param card - the card placed.
+     * @param slot - the slot the card was placed in.
+     */
+    private void indexSetsWith(int card, int slot) {
+        int n = 0;
+        for (int i = 0; i < slotToCard.length; ++i)
+            if (i != slot && slotToCard[i] != EMPTY)
+                otherCards[n++] = slotToCard[i];
+
+        int r = combination.length;
+        if (r == 0 || n < r) return;
+        if (r == 2) {
+            indexPairsWith(card, n);
+            return;
+        }
+        for (int i = 0; i < r; ++i)
+            combination[i] = i;
+        candidate[r] = card;
+
+        setsLock.lock();
+        try {
+            while (combination[r - 1] < n) {
+                for (int i = 0; i < r; ++i)
+                    candidate[i] = otherCards[combination[i]];
+                if (env.util.testSet(candidate)) {
+                    int[] set = candidate.clone();
+                    Arrays.sort(set);
+                    sets.add(set);
+                }
+
+                // generate next combination in lexicographic order
+                int t = r - 1;
+                while (t != 0 && combination[t] == n - r + t) --t;
+                combination[t]++;
+                for (int i = t + 1; i < r; i++) combination[i] = combination[i - 1] + 1;
+            }
+        } finally {
+            setsLock.unlock();
+        }
+    }
+
+    /**
+     * Adds the sets of a newly placed card for featureSize 3: each set is found from both of its other cards, and is
+     * added from the lower one.
+     *
+     * @param card - the card placed.
+     * @param n    - the number of other cards on the table (in otherCards).
+     */
+    private void indexPairsWith(int card, int n) {
+        setsLock.lock();
+        try {
+            for (int i = 0; i < n; ++i) {
+                int other = otherCards[i];
+                int third = env.util.completeSet(other, card);
+                if (third > other && isOnTable(third)) {
+                    int[] set = {other, third, card};
+                    Arrays.sort(set);
+                    sets.add(set);
+                }
+            }
+        } finally {
+            setsLock.unlock();
+        }
+    }
+
+    /**
+     * @return - true iff the card is in a slot (cardToSlot is not cleared when a card is placed over another).
+     */
+    private boolean isOnTable(int card) {
+        int slot = cardToSlot[card];
+        return slot != EMPTY && slotToCard[slot] == card;
+    }
+
+    /**
+     * Drops the sets that contain a card leaving the table.
+     *
+     * @param card - the card removed.
+     */
+    private void unindexSetsWith(int card) {
+        setsLock.lock();
+        try {
+            sets.removeIf(set -> Arrays.binarySearch(set, card) >= 0);
+        } finally {
+            setsLock.unlock();
+        }
     }
 
     /**
@@ -86,12 +310,48 @@ public class Table {
      */
     public int countCards() {
         int cards = 0;
-        for (Integer card : slotToCard)
-            if (card != null)
+        for (int card : slotToCard)
+            if (card != EMPTY)
                 ++cards;
         return cards;
     }
 
+    /**
+     * @param slot - the slot.
+     * @return - the card placed in the slot, or EMPTY if there is none.
+     */
+    public int cardAt(int slot) {
+        ReentrantLock lock = slotLocks[slot];
+        lock.lock();
+        try {
+            return slotToCard[slot];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @param card - the card id.
+     * @return - the slot the card is placed in, or EMPTY if it is not on the table.
+     */
+    public int slotOf(int card) {
+        return cardToSlot[card];
+    }
+
+    /**
+     * @param slot - the slot.
+     * @return - the number of times the card in the slot has changed (placed or removed).
+     */
+    public int version(int slot) {
+        ReentrantLock lock = slotLocks[slot];
+        lock.lock();
+        try {
+            return versions[slot];
+        } finally {
+            lock.unlock();
+        }
+    }
+
     /**
      * Places a card on the table in a grid slot.
      * @param card - the card id to place in the slot.
@@ -101,38 +361,88 @@ public class Table {
      */
     public void placeCard(int card, int slot) {
         try {
-            Thread.sleep(env.config.tableDelayMillis);
+            env.clock.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {}
 
-        cardToSlot[card] = slot;
-        slotToCard[slot] = card;
+        ReentrantLock lock = slotLocks[slot];
+        lock.lock();
+        try {
+            if (slotToCard[slot] != EMPTY)
+                unindexSetsWith(slotToCard[slot]);
+            cardToSlot[card] = slot;
+            slotToCard[slot] = card;
+            versions[slot]++;
+            indexSetsWith(card, slot);
 
-        env.ui.placeCard(card, slot);
+            env.ui.placeCard(card, slot);
+            env.journal.record(Journal.Event.CARD_PLACED, -1, slot, card, 0);
+            cardsPlaced.increment();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
-     * Removes a card from a grid slot on the table.
+     * Removes a card from a grid slot on the table, together with all the tokens placed on it.
      * @param slot - the slot from which to remove the card.
      */
     public void removeCard(int slot) {
         try {
-            Thread.sleep(env.config.tableDelayMillis);
+            env.clock.sleep(env.config.tableDelayMillis);
         } catch (InterruptedException ignored) {}
-        Integer card = slotToCard[slot];
-        cardToSlot[card] = null;
-        slotToCard[slot] = null;
-        env.ui.removeCard(slot);
 
+        ReentrantLock lock = slotLocks[slot];
+        lock.lock();
+        try {
+            int card = slotToCard[slot];
+            if (card == EMPTY) return;
+            for (int player = nextTokenOwner(slot, 0); player >= 0; player = nextTokenOwner(slot, player + 1))
+                clearPlayerToken(player, slot);
+            Arrays.fill(tokens, slot * slotStride, slot * slotStride + tokenWords, 0L);
+            cardToSlot[card] = EMPTY;
+            slotToCard[slot] = EMPTY;
+            versions[slot]++;
+            unindexSetsWith(card);
+            env.ui.removeTokens(slot);
+            env.ui.removeCard(slot);
+            env.journal.record(Journal.Event.CARD_REMOVED, -1, slot, card, 0);
+            cardsRemoved.increment();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
      * Places a player token on a grid slot.
      * @param player - the player the token belongs to.
      * @param slot   - the slot on which to place the token.
+     * @return       - true iff the token was placed (i.e. there is a card in the slot).
      */
-    public void placeToken(int player, int slot) {
-        tokenMap[slot].add(player);
-        env.ui.placeToken(player, slot);
+    public boolean placeToken(int player, int slot) {
+        return placeToken(player, slot, ANY_VERSION);
+    }
+
+    /**
+     * Places a player token on a grid slot, unless the card in the slot changed since the token was meant for it.
+     * @param player  - the player the token belongs to.
+     * @param slot    - the slot on which to place the token.
+     * @param version - the version of the slot the token is meant for (see version), or ANY_VERSION.
+     * @return        - true iff the token was placed (i.e. there is a card in the slot, of the given version).
+     */
+    public boolean placeToken(int player, int slot, int version) {
+        ReentrantLock lock = slotLocks[slot];
+        lock.lock();
+        try {
+            if (slotToCard[slot] == EMPTY || version != ANY_VERSION && version != versions[slot]) return false;
+            tokens[slot * slotStride + (player >>> 6)] |= 1L << player;
+            playerTokens.accumulateAndGet(player * playerStride + (slot >>> 6), 1L << slot, (a, b) -> a | b);
+            env.ui.placeToken(player, slot);
+            env.journal.record(Journal.Event.TOKEN_PLACED, player, slot, slotToCard[slot], 0);
+            tokensPlaced.increment();
+            return true;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -142,22 +452,137 @@ public class Table {
      * @return       - true iff a token was successfully removed.
      */
     public boolean removeToken(int player, int slot) {
-        boolean found = false;
-        ListIterator<Integer> iterator = tokenMap[slot].listIterator();
-        while (iterator.hasNext() && !found) {
-            Integer temp = iterator.next();
-            if (temp.equals(player)) {
-                iterator.remove();
-                found = true;
-            }
+        ReentrantLock lock = slotLocks[slot];
+        lock.lock();
+        try {
+            int word = slot * slotStride + (player >>> 6);
+            long bit = 1L << player;
+            if ((tokens[word] & bit) == 0) return false;
+            tokens[word] &= ~bit;
+            clearPlayerToken(player, slot);
+            env.ui.removeToken(player, slot);
+            env.journal.record(Journal.Event.TOKEN_REMOVED, player, slot, slotToCard[slot], 0);
+            tokensRemoved.increment();
+            return true;
+        } finally {
+            lock.unlock();
         }
-        env.ui.removeToken(player, slot);
-        return found;
     }
 
-    public List<Integer>[] getTokenMap(){
-        return tokenMap;
+    /**
+     * @param player - the player id.
+     * @param slot   - the slot.
+     * @return - true iff the player has a token on the slot.
+     */
+    public boolean hasToken(int player, int slot) {
+        return (playerTokens.get(player * playerStride + (slot >>> 6)) & (1L << slot)) != 0;
+    }
+
+    /**
+     * @param player - the player id.
+     * @return - the number of tokens the player has on the table.
+     */
+    public int tokenCount(int player) {
+        int count = 0;
+        for (int word = 0; word < slotWords; word++)
+            count += Long.bitCount(playerTokens.get(player * playerStride + word));
+        return count;
+    }
+
+    /**
+     * Finds the slots on which a player has tokens (without locking the slots).
+     *
+     * @param player - the player id.
+     * @param slots  - an array to fill with the slots (in ascending order, as many as fit).
+     * @return - the number of tokens the player has on the table.
+     */
+    public int tokensOf(int player, int[] slots) {
+        int count = 0;
+        for (int word = 0; word < slotWords; word++)
+            for (long bits = playerTokens.get(player * playerStride + word); bits != 0; bits &= bits - 1) {
+                if (count < slots.length) slots[count] = word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                count++;
+            }
+        return count;
+    }
+
+    /**
+     * Clears a slot from the slots of a player's tokens. Called with the slot locked.
+     */
+    private void clearPlayerToken(int player, int slot) {
+        playerTokens.accumulateAndGet(player * playerStride + (slot >>> 6), ~(1L << slot), (a, b) -> a & b);
+    }
+
+    /**
+     * Finds the players that have a token on a slot, in the manner of BitSet.nextSetBit:
+     * {@code for (int p = table.nextTokenOwner(slot, 0); p >= 0; p = table.nextTokenOwner(slot, p + 1))}.
+     *
+     * @param slot       - the slot.
+     * @param fromPlayer - the player id to start the search from (inclusive).
+     * @return - the first player id >= fromPlayer with a token on the slot, or -1 if there is none.
+     */
+    public int nextTokenOwner(int slot, int fromPlayer) {
+        int word = fromPlayer >>> 6;
+        if (word >= tokenWords) return -1;
+        ReentrantLock lock = slotLocks[slot];
+        lock.lock();
+        try {
+            int base = slot * slotStride;
+            long bits = tokens[base + word] & (-1L << fromPlayer);
+            while (true) {
+                if (bits != 0) return word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+                if (++word == tokenWords) return -1;
+                bits = tokens[base + word];
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
+    /**
+     * Reads the cards of a player's set claim as one consistent snapshot: all the slots are locked (in ascending
+     * order) while they are checked, so no card or token in them can change in the middle.
+     *
+     * @param player - the claiming player.
+     * @param slots  - the slots of the claim.
+     * @param cards  - an array to fill with the cards in the slots (respectively).
+     * @return - true iff every slot holds a card with a token of the player on it.
+     */
+    public boolean snapshotClaim(int player, int[] slots, int[] cards) {
+        return snapshotClaim(player, slots, null, cards);
+    }
 
-}
\ No newline at end of file
+    /**
+     * Reads the cards of a player's set claim as one consistent snapshot, if none of its slots changed since the
+     * claim was submitted.
+     *
+     * @param player   - the claiming player.
+     * @param slots    - the slots of the claim.
+     * @param versions - the versions of the slots when the claim was submitted (see version), or null for any.
+     * @param cards    - an array to fill with the cards in the slots (respectively).
+     * @return - true iff every slot holds the same card as when the claim was submitted, with a token of the player.
+     */
+    public boolean snapshotClaim(int player, int[] slots, int[] versions, int[] cards) {
+        int[] order = slots.clone();
+        Arrays.sort(order);
+        int locked = 0;
+        try {
+            for (int slot : order) {
+                slotLocks[slot].lock();
+                locked++;
+            }
+            for (int i = 0; i < slots.length; i++) {
+                int slot = slots[i];
+                if (slotToCard[slot] == EMPTY || (tokens[slot * slotStride + (player >>> 6)] & (1L << player)) == 0)
+                    return false;
+                if (versions != null && versions[i] != this.versions[slot])
+                    return false;
+                cards[i] = slotToCard[slot];
+            }
+            return true;
+        } finally {
+            for (int i = 0; i < locked; i++)
+                slotLocks[order[i]].unlock();
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class EnvTest {
+
+    private final Logger logger = new UtilImplTest.MockLogger();
+
+    private Env env(String seed) {
+        Properties properties = new Properties();
+        properties.put("LogLevel", "OFF");
+        properties.put("Seed", seed);
+        return new Env(logger, new Config(logger, properties), new NullUserInterface(), null);
+    }
+
+    @Test
+    void random_SameSeedSameStreams() {
+        Env env = env("42"), other = env("42");
+        for (int component = 0; component < 4; component++) {
+            SplittableRandom random = env.random(), otherRandom = other.random();
+            for (int i = 0; i < 100; i++)
+                assertEquals(random.nextLong(), otherRandom.nextLong());
+        }
+    }
+
+    @Test
+    void random_ComponentsGetDifferentStreams() {
+        Env env = env("42");
+        assertEquals(42, env.seed);
+        assertNotEquals(env.random().nextLong(), env.random().nextLong());
+        assertNotEquals(env("42").random().nextLong(), env("43").random().nextLong());
+    }
+
+    @Test
+    void config_UnknownComputerStrategyFallsBackToRandom() {
+        Properties properties = new Properties();
+        properties.put("ComputerStrategy", " Perfect ");
+        assertEquals("perfect", new Config(logger, properties).computerStrategy);
+        properties.put("ComputerStrategy", "perfekt");
+        assertEquals("random", new Config(logger, properties).computerStrategy);
+    }
+}
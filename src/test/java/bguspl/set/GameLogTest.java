@@ -0,0 +1,82 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameLogTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void log_FormatsTheArgumentsWhenWritten() throws IOException {
+        Path file = dir.resolve("game.log");
+        GameLog log = new GameLog(file, 16);
+        log.setFormat("%2$s %3$s%n");
+        log.log(GameLog.Category.UI, Level.FINE, "placing card {} in slot {}", 12, 3);
+        log.log(GameLog.Category.INPUT, Level.INFO, "no arguments");
+        log.handler().publish(new LogRecord(Level.SEVERE, "a record"));
+        log.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(3, lines.size());
+        assertEquals("FINE placing card 12 in slot 3", lines.get(0));
+        assertEquals("INFO no arguments", lines.get(1));
+        assertEquals("SEVERE a record", lines.get(2));
+    }
+
+    @Test
+    void log_SkipsEventsBelowTheCategoryLevel() throws IOException {
+        Path file = dir.resolve("game.log");
+        GameLog log = new GameLog(file, 16);
+        log.setFormat("%3$s%n");
+        log.setLevel(GameLog.Category.UI, Level.INFO);
+        log.setLevel(GameLog.Category.INPUT, Level.OFF);
+        log.log(GameLog.Category.UI, Level.FINE, "hidden");
+        log.log(GameLog.Category.UI, Level.WARNING, "shown {}", 1);
+        log.log(GameLog.Category.INPUT, Level.SEVERE, "hidden");
+        log.close();
+
+        assertEquals(1, Files.readAllLines(file).size());
+    }
+
+    @Test
+    void log_KeepsTheOrderOfEachThread() throws IOException, InterruptedException {
+        Path file = dir.resolve("game.log");
+        GameLog log = new GameLog(file, 1 << 16);
+        log.setFormat("%3$s%n");
+        int threads = 4, events = 5_000;
+        Thread[] loggers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            loggers[t] = new Thread(() -> {
+                for (int i = 0; i < events; i++)
+                    log.log(GameLog.Category.GAME, Level.INFO, "{} {}", id, i);
+            });
+            loggers[t].start();
+        }
+        for (Thread logger : loggers)
+            logger.join();
+        log.close();
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(threads * events, lines.size() + log.dropped());
+        int[] last = {-1, -1, -1, -1};
+        for (String line : lines) {
+            String[] parts = line.split(" ");
+            int id = Integer.parseInt(parts[0]), i = Integer.parseInt(parts[1]);
+            assertTrue(i > last[id]);
+            last[id] = i;
+        }
+    }
+}
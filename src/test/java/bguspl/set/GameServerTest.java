@@ -0,0 +1,49 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GameServerTest {
+
+    @Test
+    void rooms_RunWithinTheThreadLimit() throws InterruptedException {
+        Config config = TestGames.smallGame(TestGames.logger());
+        Util util = new UtilImpl(config);
+        int threadsPerRoom = 1 + config.players + config.computerPlayers;
+        GameServer server = new GameServer(TestGames.logger(), new GameThreads(config, TestGames.logger()), 2 * threadsPerRoom, 0, Metrics.NONE);
+
+        List<GameRoom> rooms = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            GameRoom room = server.open(TestGames.logger(), config, util, new NullUserInterface(), new ScaledClock(1000));
+            assertEquals(GameRoom.State.CREATED, room.state());
+            room.start();
+            rooms.add(room);
+        }
+        assertTrue(server.runningRooms().size() <= 2);
+
+        for (GameRoom room : rooms) {
+            room.await();
+            assertEquals(GameRoom.State.FINISHED, room.state());
+            assertEquals(threadsPerRoom, room.threads());
+            assertTrue(room.peakTasks() <= threadsPerRoom);
+        }
+        server.shutdown();
+        assertTrue(server.peakTasks() <= 2 * threadsPerRoom);
+        assertEquals(0, server.queuedRooms());
+    }
+
+    @Test
+    void open_RejectsRoomsLargerThanTheServer() throws InterruptedException {
+        Config config = TestGames.smallGame(TestGames.logger());
+        GameServer server = new GameServer(TestGames.logger(), new GameThreads(config, TestGames.logger()), 4, 0, Metrics.NONE);
+        assertThrows(IllegalArgumentException.class,
+                () -> server.open(TestGames.logger(), config, new UtilImpl(config), new NullUserInterface(), new ScaledClock(1)));
+        server.shutdown();
+    }
+}
@@ -0,0 +1,79 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MetricsTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void bucket_CoversEveryValueOnce() {
+        for (long value = 0; value < 1 << 16; value++) {
+            int bucket = Metrics.bucket(value);
+            assertTrue(value <= Metrics.bucketMax(bucket));
+            if (bucket > 0) assertTrue(value > Metrics.bucketMax(bucket - 1));
+        }
+        assertTrue(Metrics.bucketMax(Metrics.bucket(Long.MAX_VALUE)) == Long.MAX_VALUE);
+    }
+
+    @Test
+    void histogram_PercentilesWithinTheBucketPrecision() {
+        Metrics metrics = new Metrics();
+        Metrics.Histogram histogram = metrics.histogram("latency");
+        for (long value = 1; value <= 10000; value++)
+            histogram.record(value * 1000);
+
+        Metrics.HistogramSnapshot snapshot = metrics.snapshot().histograms.get("latency");
+        assertEquals(10000, snapshot.count);
+        assertEquals(5000500, snapshot.mean());
+        assertEquals(10000000, snapshot.max);
+        assertEquals(5000000, snapshot.percentile(50), 5000000 / 16.0);
+        assertEquals(9900000, snapshot.percentile(99), 9900000 / 16.0);
+        assertEquals(10000000, snapshot.percentile(100));
+    }
+
+    @Test
+    void counter_SharedByName() {
+        Metrics metrics = new Metrics();
+        assertSame(metrics.counter("claims"), metrics.counter("claims"));
+        metrics.counter("claims").increment();
+        metrics.counter("claims").add(2);
+        assertEquals(3, (long) metrics.snapshot().counters.get("claims"));
+    }
+
+    @Test
+    void none_RecordsNothing() {
+        Metrics.NONE.counter("claims").increment();
+        Metrics.NONE.histogram("latency").record(5);
+        assertEquals(0, Metrics.NONE.counter("claims").get());
+        assertEquals(0, Metrics.NONE.histogram("latency").snapshot().count);
+        assertEquals(0, Metrics.NONE.histogram("latency").startNanos());
+    }
+
+    @Test
+    void dump_AppendsASnapshot() throws IOException {
+        Path file = dir.resolve("metrics.txt");
+        Metrics metrics = new Metrics();
+        metrics.counter("claims").increment();
+        metrics.histogram("latency").record(7);
+        metrics.dump(file);
+        metrics.dump(file);
+
+        List<String> lines = Files.readAllLines(file);
+        assertEquals(8, lines.size());
+        assertTrue(lines.get(0).startsWith("# "));
+        assertEquals("claims 1", lines.get(1));
+        assertEquals("latency count=1 mean=7 p50=7 p90=7 p99=7 p99.9=7 max=7", lines.get(2));
+    }
+}
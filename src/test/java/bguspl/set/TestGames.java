@@ -0,0 +1,38 @@
+package bguspl.set;
+
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * Fixtures shared by the tests that play whole games (in this package and in bguspl.set.ex).
+ */
+public final class TestGames {
+
+    private TestGames() {}
+
+    /**
+     * @return - a logger that does not log anything.
+     */
+    public static Logger logger() {
+        return new UtilImplTest.MockLogger();
+    }
+
+    /**
+     * A small and fast game: 2 computer players, 9 cards and a 3x3 table.
+     *
+     * @param logger - the logger of the configuration.
+     * @return - the configuration of the game.
+     */
+    public static Config smallGame(Logger logger) {
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "2");
+        properties.put("FeatureCount", "2");
+        properties.put("Rows", "3");
+        properties.put("Columns", "3");
+        properties.put("TableDelaySeconds", "0");
+        properties.put("TurnTimeoutWarningSeconds", "0");
+        properties.put("LogLevel", "OFF");
+        return new Config(logger, properties);
+    }
+}
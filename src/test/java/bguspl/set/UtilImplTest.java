@@ -0,0 +1,216 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UtilImplTest {
+
+    UtilImpl util;
+    Config config;
+
+    private static Config config(int featureSize, int featureCount) {
+        Properties properties = new Properties();
+        properties.put("FeatureSize", Integer.toString(featureSize));
+        properties.put("FeatureCount", Integer.toString(featureCount));
+        return new Config(new MockLogger(), properties);
+    }
+
+    @BeforeEach
+    void setUp() {
+        config = config(3, 4);
+        util = new UtilImpl(config);
+    }
+
+    /**
+     * The combinations walk the engine replaced, kept here as the reference implementation.
+     */
+    private static List<int[]> bruteForceSets(Util util, int setSize, List<Integer> deck, int count) {
+        LinkedList<int[]> sets = new LinkedList<>();
+        int n = deck.size();
+        int[] combination = IntStream.range(0, setSize).toArray();
+        while (n >= setSize && combination[setSize - 1] < n) {
+            int[] cards = Arrays.stream(combination).map(deck::get).sorted().toArray();
+            if (util.testSet(cards)) {
+                sets.add(cards);
+                if (sets.size() >= count) return sets;
+            }
+            int t = setSize - 1;
+            while (t != 0 && combination[t] == n - setSize + t) --t;
+            combination[t]++;
+            for (int i = t + 1; i < setSize; i++) combination[i] = combination[i - 1] + 1;
+        }
+        return sets;
+    }
+
+    private static void assertSameSets(List<int[]> expected, List<int[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i)
+            assertArrayEquals(expected.get(i), actual.get(i));
+    }
+
+    @Test
+    void testSet_LegalAndIllegal() {
+        assertTrue(util.testSet(new int[]{0, 1, 2}));       // 0000, 0001, 0002
+        assertTrue(util.testSet(new int[]{0, 40, 80}));     // 0000, 1111, 2222
+        assertFalse(util.testSet(new int[]{0, 1, 3}));      // 0000, 0001, 0010
+    }
+
+    /**
+     * The features matrix check testSet used before the packed encoding.
+     */
+    private static boolean referenceTestSet(Util util, int[] cards) {
+        int[][] features = util.cardsToFeatures(cards);
+        int featureCount = features.length == 0 ? 1 : features[0].length;
+        for (int i = 0; i < featureCount; ++i) {
+            boolean sameSame = true, butDifferent = true;
+            for (int j = 1; j < features.length; ++j)
+                if (features[0][i] != features[j][i]) sameSame = false;
+            for (int j = 0; j < features.length; ++j)
+                for (int k = j + 1; k < features.length; ++k)
+                    if (features[j][i] == features[k][i]) butDifferent = false;
+            if (sameSame == butDifferent) return false;
+        }
+        return true;
+    }
+
+    @Test
+    void testSet_MatchesFeaturesMatrixCheck() {
+        Random random = new Random(7);
+        UtilImpl wide = new UtilImpl(config(65, 1)); // too wide for the packed encoding
+        for (int round = 0; round < 5000; ++round) {
+            int[] cards = random.ints(1 + random.nextInt(4), 0, config.deckSize).toArray();
+            assertEquals(referenceTestSet(util, cards), util.testSet(cards));
+            int[] wideCards = random.ints(1 + random.nextInt(4), 0, 4).toArray();
+            assertEquals(referenceTestSet(wide, wideCards), wide.testSet(wideCards));
+        }
+    }
+
+    @Test
+    void findSets_WholeDeckMatchesCombinationsWalk() {
+        List<Integer> deck = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+        Collections.shuffle(deck, new Random(17));
+
+        assertSameSets(bruteForceSets(util, 3, deck, Integer.MAX_VALUE), util.findSets(deck, Integer.MAX_VALUE));
+        assertSameSets(bruteForceSets(util, 3, deck, 5), util.findSets(deck, 5));
+    }
+
+    @Test
+    void findSets_RandomTablesMatchCombinationsWalk() {
+        Random random = new Random(42);
+        List<Integer> cards = IntStream.range(0, config.deckSize).boxed().collect(Collectors.toList());
+        for (int round = 0; round < 200; ++round) {
+            Collections.shuffle(cards, random);
+            List<Integer> table = new ArrayList<>(cards.subList(0, random.nextInt(16)));
+            assertSameSets(bruteForceSets(util, 3, table, Integer.MAX_VALUE), util.findSets(table, Integer.MAX_VALUE));
+            assertSameSets(bruteForceSets(util, 3, table, 1), util.findSets(table, 1));
+        }
+    }
+
+    @Test
+    void findSets_GeneralFeatureSize() {
+        UtilImpl util4 = new UtilImpl(config(4, 3));
+        List<Integer> deck = IntStream.range(0, 64).boxed().collect(Collectors.toList());
+        Collections.shuffle(deck, new Random(3));
+        List<Integer> table = deck.subList(0, 20);
+
+        assertSameSets(bruteForceSets(util4, 4, table, Integer.MAX_VALUE), util4.findSets(table, Integer.MAX_VALUE));
+    }
+
+    @Test
+    void findSets_LargeVariantsMatchCombinationsWalk() {
+        Random random = new Random(11);
+        for (int[] sizes : new int[][]{{3, 6}, {5, 3}, {4, 4}}) {
+            UtilImpl large = new UtilImpl(config(sizes[0], sizes[1]));
+            List<Integer> deck = IntStream.range(0, (int) Math.pow(sizes[0], sizes[1])).boxed().collect(Collectors.toList());
+            Collections.shuffle(deck, random);
+            List<Integer> table = deck.subList(0, 30);
+
+            assertSameSets(bruteForceSets(large, sizes[0], table, Integer.MAX_VALUE), large.findSets(table, Integer.MAX_VALUE));
+            assertSameSets(bruteForceSets(large, sizes[0], deck, 10), large.findSets(deck, 10));
+        }
+    }
+
+    @Test
+    void findSets_ParallelSearchMatchesSequential() {
+        Properties properties = new Properties();
+        properties.put("FeatureCount", "6");
+        properties.put("ParallelSearchCards", "0");
+        UtilImpl sequential = new UtilImpl(new Config(new MockLogger(), properties));
+        properties.put("ParallelSearchCards", "1");
+        UtilImpl parallel = new UtilImpl(new Config(new MockLogger(), properties));
+        List<Integer> deck = IntStream.range(0, 729).boxed().collect(Collectors.toList());
+        Collections.shuffle(deck, new Random(5));
+
+        assertSameSets(sequential.findSets(deck, Integer.MAX_VALUE), parallel.findSets(deck, Integer.MAX_VALUE));
+        assertSameSets(sequential.findSets(deck, 1), parallel.findSets(deck, 1));
+        assertSameSets(sequential.findSets(deck, 500), parallel.findSets(deck, 500));
+    }
+
+    @Test
+    void containsSet_MatchesFindSets() {
+        Random random = new Random(23);
+        for (int[] sizes : new int[][]{{3, 4}, {3, 7}, {4, 3}}) {
+            UtilImpl sized = new UtilImpl(config(sizes[0], sizes[1]));
+            List<Integer> cards = IntStream.range(0, (int) Math.pow(sizes[0], sizes[1])).boxed().collect(Collectors.toList());
+            for (int round = 0; round < 300; ++round) {
+                Collections.shuffle(cards, random);
+                int[] table = cards.subList(0, random.nextInt(21)).stream().mapToInt(Integer::intValue).toArray();
+                BitSet bits = new BitSet();
+                Arrays.stream(table).forEach(bits::set);
+                boolean expected = !sized.findSets(table, table.length, 1).isEmpty();
+
+                assertEquals(expected, sized.containsSet(table, table.length));
+                assertEquals(expected, sized.containsSet(bits));
+            }
+        }
+        assertFalse(util.containsSet(new int[]{0, 1, 3, 4, 2}, 4)); // 0000, 0001, 0010, 0011 (0002 not searched)
+        assertTrue(util.containsSet(new int[]{0, 1, 3, 4, 2}, 5));
+    }
+
+    @Test
+    void completeSet_CompletesEveryPairWithinTheBudget() {
+        // 243 cards: a whole deck table of 243 * 243 bytes and digit group tables of (81 + 729) ints
+        String[] kilobytes = {"16384", "4", "0"}; // whole deck and digit group tables, digit group tables, none
+        long[] bytes = {243 * 243 + (81 + 729) * Integer.BYTES, (81 + 729) * Integer.BYTES, 0};
+        for (int budget = 0; budget < kilobytes.length; budget++) {
+            Properties properties = new Properties();
+            properties.put("FeatureCount", "5");
+            properties.put("CompletionTableKilobytes", kilobytes[budget]);
+            UtilImpl sized = new UtilImpl(new Config(new MockLogger(), properties));
+            assertEquals(bytes[budget], sized.completions().bytes());
+            CardCodec codec = sized.codec();
+            for (int a = 0; a < codec.deckSize; ++a)
+                for (int b = 0; b < codec.deckSize; ++b) {
+                    int third = sized.completeSet(a, b);
+                    assertTrue(a == b ? third == a : third != a && third != b && codec.testSet(new int[]{a, b, third}));
+                }
+            List<Integer> deck = IntStream.range(0, codec.deckSize).boxed().collect(Collectors.toList());
+            Collections.shuffle(deck, new Random(13));
+            assertSameSets(bruteForceSets(sized, 3, deck, 50), sized.findSets(deck, 50));
+        }
+        assertEquals(-1, new UtilImpl(config(4, 3)).completeSet(0, 1));
+    }
+
+    static class MockLogger extends Logger {
+        protected MockLogger() {
+            super("", null);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ActionQueueTest {
+
+    ActionQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        queue = new ActionQueue(3);
+    }
+
+    @Test
+    void offer_DropsWhenFull() {
+        assertTrue(queue.offer(1));
+        assertTrue(queue.offer(2));
+        assertTrue(queue.offer(3));
+        assertFalse(queue.offer(4));
+        assertEquals(3, queue.size());
+
+        assertEquals(1, queue.take());
+        assertTrue(queue.offer(4));
+        assertEquals(2, queue.take());
+        assertEquals(3, queue.take());
+        assertEquals(4, queue.take());
+    }
+
+    @Test
+    void clear_DropsAllActions() {
+        queue.offer(1);
+        queue.offer(2);
+        queue.clear();
+
+        assertEquals(0, queue.size());
+        assertTrue(queue.offer(5));
+        assertEquals(5, queue.take());
+    }
+
+    @Test
+    void pending_CountsActionsUntilHandled() {
+        queue.offer(1);
+        queue.offer(2);
+        assertEquals(2, queue.pending());
+
+        queue.take();
+        assertEquals(2, queue.pending());
+        queue.handled();
+        assertEquals(1, queue.pending());
+
+        queue.clear();
+        assertEquals(0, queue.pending());
+    }
+
+    @Test
+    void put_HandsOverEveryActionInOrder() throws InterruptedException {
+        final int actions = 100_000;
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < actions; ++i)
+                    queue.put(i, i + 1);
+            } catch (InterruptedException ignored) {}
+        });
+        producer.start();
+
+        for (int expected = 0; expected < actions; ) {
+            int slot = queue.take();
+            if (slot != ActionQueue.EMPTY) {
+                assertEquals(expected++, slot);
+                assertEquals(slot + 1, queue.takenVersion());
+            }
+        }
+        producer.join();
+        assertEquals(0, queue.size());
+    }
+}
@@ -0,0 +1,75 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeckTest {
+
+    Deck deck;
+
+    @BeforeEach
+    void setUp() {
+        deck = new Deck(81, new SplittableRandom(1));
+    }
+
+    @Test
+    void shuffle_KeepsAllCards() {
+        deck.shuffle();
+
+        int[] cards = Arrays.copyOf(deck.cards(), deck.size());
+        Arrays.sort(cards);
+        assertArrayEquals(IntStream.range(0, 81).toArray(), cards);
+    }
+
+    @Test
+    void shuffle_SameSeedSameOrder() {
+        Deck other = new Deck(81, new SplittableRandom(1));
+        deck.shuffle();
+        other.shuffle();
+
+        assertArrayEquals(deck.cards(), other.cards());
+    }
+
+    @Test
+    void drawAndAdd_WorkOnTheTop() {
+        int top = deck.cards()[deck.size() - 1];
+        assertEquals(top, deck.draw());
+        assertEquals(80, deck.size());
+
+        deck.add(top);
+        assertEquals(81, deck.size());
+        assertEquals(top, deck.draw());
+    }
+
+    @Test
+    void version_ChangesWithTheCardsOnly() {
+        int version = deck.version();
+        deck.shuffle();
+        assertEquals(version, deck.version());
+
+        int card = deck.draw();
+        assertNotEquals(version, deck.version());
+        version = deck.version();
+        deck.add(card);
+        assertNotEquals(version, deck.version());
+    }
+
+    @Test
+    void draw_EmptyDeck() {
+        while (!deck.isEmpty())
+            deck.draw();
+
+        assertTrue(deck.isEmpty());
+        assertThrows(IllegalStateException.class, deck::draw);
+    }
+}
@@ -0,0 +1,70 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class PerfectStrategyTest {
+
+    Table table;
+    PerfectStrategy strategy;
+
+    @BeforeEach
+    void setUp() {
+        Properties properties = new Properties();
+        properties.put("TableDelaySeconds", "0");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        Env env = new Env(logger, config, new TableTest.MockUserInterface(), new UtilImpl(config));
+        table = new Table(env);
+        strategy = new PerfectStrategy(env, table, 0, new SplittableRandom(1));
+    }
+
+    @Test
+    void nextSlot_RemovesOtherTokensThenPlacesTheSet() throws InterruptedException {
+        table.placeCard(0, 4);  // 0000
+        table.placeCard(1, 7);  // 0001
+        table.placeCard(2, 2);  // 0002, the only set
+        table.placeCard(5, 9);  // 0012
+        table.placeToken(0, 9);
+
+        assertEquals(9, strategy.nextSlot(0));
+        table.removeToken(0, 9);
+        assertEquals(PlayerStrategy.NONE, strategy.nextSlot(1)); // waits for the key press to be handled
+
+        for (int expected : new int[]{4, 7, 2}) {
+            assertEquals(expected, strategy.nextSlot(0));
+            table.placeToken(0, expected);
+        }
+        assertEquals(PlayerStrategy.NONE, strategy.nextSlot(0));
+    }
+
+    @Test
+    void version_IsTheVersionOfTheCardPressedFor() throws InterruptedException {
+        table.placeCard(0, 4);
+        table.placeCard(1, 7);
+        table.placeCard(2, 2);
+
+        int slot = strategy.nextSlot(0);
+        assertEquals(table.version(slot), strategy.version());
+        int card = table.cardAt(slot);
+        table.removeCard(slot);
+        table.placeCard(card, slot); // the dealer took the card away and put it back before the press was handled
+        assertFalse(table.placeToken(0, slot, strategy.version()));
+    }
+
+    @Test
+    void nextSlot_NoneWithoutSets() throws InterruptedException {
+        table.placeCard(0, 0);
+        table.placeCard(1, 1);
+        assertEquals(PlayerStrategy.NONE, strategy.nextSlot(0));
+    }
+}
@@ -0,0 +1,84 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.Journal;
+import bguspl.set.NullUserInterface;
+import bguspl.set.ScaledClock;
+import bguspl.set.TestGames;
+import bguspl.set.Util;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class ReplayerTest {
+
+    @TempDir
+    Path dir;
+
+    private final Logger logger = TestGames.logger();
+
+    @Test
+    void replay_ReproducesTheRecordedGame() throws IOException, InterruptedException {
+        Config config = TestGames.smallGame(logger);
+        Util util = new UtilImpl(config);
+        Path file = dir.resolve("game.journal");
+        ScaledClock clock = new ScaledClock(1000);
+
+        Journal journal = new Journal(file, config, clock);
+        Env env = Env.builder(logger, config, new NullUserInterface(), util).clock(clock).journal(journal).build();
+        Table table = new Table(env);
+        Player[] players = new Player[config.players];
+        Dealer dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, false);
+        dealer.run();
+        journal.close();
+
+        List<Journal.Record> records = Journal.read(file);
+        assertFalse(records.isEmpty());
+        Env replayEnv = Env.builder(logger, config, new NullUserInterface(), util).clock(new ScaledClock(1e9)).build();
+        Table replayed = new Table(replayEnv);
+        Replayer replayer = new Replayer(replayEnv, replayed);
+        replayer.replay(file);
+
+        assertEquals(0, replayer.divergences());
+        assertEquals(dealer.reshuffles(), replayer.reshuffles());
+        for (Player player : players) {
+            assertEquals(player.score(), replayer.score(player.id));
+            assertEquals(player.penalties(), replayer.penalties(player.id));
+        }
+        for (int slot = 0; slot < config.tableSize; slot++)
+            assertEquals(table.cardAt(slot), replayed.cardAt(slot));
+    }
+
+    @Test
+    void read_ReturnsTheRecordsInOrder() throws IOException {
+        Config config = TestGames.smallGame(logger);
+        Path file = dir.resolve("game.journal");
+        Journal journal = new Journal(file, config, new ScaledClock(1));
+        journal.record(Journal.Event.CARD_PLACED, -1, 4, 7, 0);
+        journal.recordClaim(1, new int[]{8, 0, 4});
+        journal.record(Journal.Event.SCORE, 1, -1, -1, 3);
+        journal.close();
+
+        List<Journal.Record> records = Journal.read(file);
+        assertEquals(3, records.size());
+        assertEquals(Journal.Event.CARD_PLACED, records.get(0).event);
+        assertEquals(4, records.get(0).slot);
+        assertEquals(7, records.get(0).card);
+        assertEquals(Journal.Event.CLAIM, records.get(1).event);
+        assertArrayEquals(new int[]{8, 0, 4}, Journal.claimSlots(records.get(1), config.featureSize));
+        assertEquals(3, records.get(2).value);
+        assertArrayEquals(new int[]{config.tableSize, config.players, config.featureSize}, Journal.readHeader(file));
+    }
+}
@@ -0,0 +1,161 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Properties;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Runs many player threads against a single table at once.
+ */
+class TableStressTest {
+
+    private static final long RUN_MILLIS = 200;
+
+    private static Table fullTable(int players) {
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", Integer.toString(players));
+        properties.put("TableDelaySeconds", "0");
+        TableTest.MockLogger logger = new TableTest.MockLogger();
+        Config config = new Config(logger, properties);
+        Table table = new Table(new Env(logger, config, new TableTest.MockUserInterface(), new TableTest.MockUtil()));
+        for (int slot = 0; slot < config.tableSize; slot++)
+            table.placeCard(slot, slot);
+        return table;
+    }
+
+    /**
+     * Runs a task on the given number of threads for RUN_MILLIS.
+     *
+     * @return - the number of operations per second done by all the threads together.
+     */
+    private static long run(int threads, PlayerTask task) throws InterruptedException {
+        AtomicBoolean stop = new AtomicBoolean();
+        CountDownLatch start = new CountDownLatch(1);
+        LongAdder operations = new LongAdder();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread[] workers = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            int player = i;
+            workers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ignored) {}
+                long done = 0;
+                SplittableRandom random = new SplittableRandom(player);
+                try {
+                    while (!stop.get()) {
+                        task.step(player, random);
+                        done++;
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+                operations.add(done);
+            });
+            workers[i].start();
+        }
+        long startNanos = System.nanoTime();
+        start.countDown();
+        Thread.sleep(RUN_MILLIS);
+        stop.set(true);
+        for (Thread worker : workers)
+            worker.join();
+        assertNull(failure.get());
+        return operations.sum() * TimeUnit.SECONDS.toNanos(1) / (System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Runs players that each press a slot of their own, the way Player handles a key press: checking the number of
+     * tokens it has, placing a token, finding its tokens, and removing the token again.
+     *
+     * @return - the number of key press pairs per second done by all the players together.
+     */
+    private static long tokenThroughput(int players) throws InterruptedException {
+        Table table = fullTable(players);
+        long throughput = run(players, (player, random) -> {
+            int slot = player % 12;
+            int[] slots = new int[3];
+            if (table.tokenCount(player) < slots.length && table.placeToken(player, slot, table.version(slot)))
+                assertEquals(1, table.tokensOf(player, slots));
+            table.removeToken(player, slot);
+        });
+        for (int slot = 0; slot < 12; slot++)
+            assertEquals(-1, table.nextTokenOwner(slot, 0));
+        return throughput;
+    }
+
+    @Test
+    @Tag("stress") // timing based, so excluded from the default test run (see the stress profile)
+    void tokens_ThroughputScalesWithPlayers() throws InterruptedException {
+        assumeTrue(Runtime.getRuntime().availableProcessors() >= 4, "needs at least 4 cores to scale");
+        tokenThroughput(1); // warm up
+        long single = tokenThroughput(1);
+        long four = tokenThroughput(4);
+
+        // players on different slots do not contend, so 4 of them do clearly more than 1 (a table lock would not)
+        assertTrue(four > single * 3 / 2, "4 players: " + four + " token ops/s, 1 player: " + single + " token ops/s");
+    }
+
+    @Test
+    void tokens_NeverOutliveTheirCard() throws InterruptedException {
+        int players = 8;
+        Table table = fullTable(players);
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        // the dealer keeps replacing cards while the players place and remove tokens
+        Thread dealer = new Thread(() -> {
+            SplittableRandom random = new SplittableRandom(100);
+            try {
+                while (!stop.get()) {
+                    int slot = random.nextInt(12);
+                    int card = table.cardAt(slot);
+                    table.removeCard(slot);
+                    assertEquals(-1, table.nextTokenOwner(slot, 0));
+                    table.placeCard(card, slot);
+                }
+            } catch (Throwable t) {
+                failure.compareAndSet(null, t);
+            }
+        });
+        dealer.start();
+        run(players, (player, random) -> {
+            int slot = random.nextInt(12);
+            if (!table.removeToken(player, slot))
+                table.placeToken(player, slot);
+
+            int[] slots = new int[3];
+            int[] cards = new int[3];
+            int count = table.tokensOf(player, slots);
+            if (count == 3 && table.snapshotClaim(player, slots, cards))
+                for (int i = 0; i < 3; i++)
+                    assertEquals(slots[i], cards[i]); // card i was always placed back in slot i
+        });
+        stop.set(true);
+        dealer.join();
+        assertNull(failure.get());
+
+        for (int slot = 0; slot < 12; slot++)
+            for (int player = table.nextTokenOwner(slot, 0); player >= 0; player = table.nextTokenOwner(slot, player + 1))
+                assertTrue(table.cardAt(slot) != Table.EMPTY);
+    }
+
+    private interface PlayerTask {
+        void step(int player, SplittableRandom random);
+    }
+}
@@ -4,20 +4,25 @@ import bguspl.set.Config;
 import bguspl.set.Env;
 import bguspl.set.UserInterface;
 import bguspl.set.Util;
+import bguspl.set.UtilImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Properties;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TableTest {
 
     Table table;
-    private Integer[] slotToCard;
-    private Integer[] cardToSlot;
+    private int[] slotToCard;
+    private int[] cardToSlot;
 
     @BeforeEach
     void setUp() {
@@ -32,8 +37,10 @@ class TableTest {
         properties.put("PlayerKeys2", "85,73,79,80");
         MockLogger logger = new MockLogger();
         Config config = new Config(logger, properties);
-        slotToCard = new Integer[config.tableSize];
-        cardToSlot = new Integer[config.deckSize];
+        slotToCard = new int[config.tableSize];
+        cardToSlot = new int[config.deckSize];
+        Arrays.fill(slotToCard, Table.EMPTY);
+        Arrays.fill(cardToSlot, Table.EMPTY);
 
         Env env = new Env(logger, config, new MockUserInterface(), new MockUtil());
         table = new Table(env, slotToCard, cardToSlot);
@@ -58,8 +65,8 @@ class TableTest {
     private void placeSomeCardsAndAssert() throws InterruptedException {
         table.placeCard(8, 2);
 
-        assertEquals(8, (int) slotToCard[2]);
-        assertEquals(2, (int) cardToSlot[8]);
+        assertEquals(8, slotToCard[2]);
+        assertEquals(2, cardToSlot[8]);
     }
 
     @Test
@@ -95,6 +102,126 @@ class TableTest {
         placeSomeCardsAndAssert();
     }
 
+    @Test
+    void placeToken_TracksTokenOwners() {
+        table.placeCard(3, 1);
+        table.placeToken(0, 1);
+        table.placeToken(1, 1);
+
+        assertTrue(table.hasToken(0, 1));
+        assertTrue(table.hasToken(1, 1));
+        assertFalse(table.hasToken(0, 2));
+        assertEquals(0, table.nextTokenOwner(1, 0));
+        assertEquals(1, table.nextTokenOwner(1, 1));
+        assertEquals(-1, table.nextTokenOwner(1, 2));
+
+        assertTrue(table.removeToken(0, 1));
+        assertFalse(table.removeToken(0, 1));
+        assertEquals(1, table.nextTokenOwner(1, 0));
+    }
+
+    @Test
+    void placeToken_MoreThan64Players() {
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "130");
+        MockLogger logger = new MockLogger();
+        Config config = new Config(logger, properties);
+        Table table = new Table(new Env(logger, config, new MockUserInterface(), new MockUtil()));
+
+        table.placeCard(7, 5);
+        table.placeToken(3, 5);
+        table.placeToken(64, 5);
+        table.placeToken(129, 5);
+
+        assertTrue(table.hasToken(64, 5));
+        assertFalse(table.hasToken(65, 5));
+        assertEquals(3, table.nextTokenOwner(5, 0));
+        assertEquals(64, table.nextTokenOwner(5, 4));
+        assertEquals(129, table.nextTokenOwner(5, 65));
+        assertEquals(-1, table.nextTokenOwner(5, 130));
+    }
+
+    @Test
+    void placeToken_EmptySlot() {
+        assertFalse(table.placeToken(0, 1));
+        assertFalse(table.hasToken(0, 1));
+    }
+
+    @Test
+    void placeToken_OnlyOnTheVersionMeantFor() {
+        table.placeCard(3, 1);
+        int version = table.version(1);
+        table.removeCard(1);
+        table.placeCard(4, 1);
+
+        assertFalse(table.placeToken(0, 1, version));
+        assertTrue(table.placeToken(0, 1, table.version(1)));
+        assertTrue(table.placeToken(1, 1, Table.ANY_VERSION));
+    }
+
+    @Test
+    void removeCard_RemovesTokens() {
+        table.placeCard(3, 1);
+        table.placeToken(0, 1);
+        table.placeToken(1, 1);
+        table.placeCard(4, 2);
+        table.placeToken(1, 2);
+        assertEquals(2, table.tokenCount(1));
+        table.removeCard(1);
+
+        assertEquals(-1, table.nextTokenOwner(1, 0));
+        assertEquals(Table.EMPTY, table.cardAt(1));
+        assertEquals(0, table.tokenCount(0));
+        int[] slots = new int[3];
+        assertEquals(1, table.tokensOf(1, slots));
+        assertEquals(2, slots[0]);
+    }
+
+    @Test
+    void snapshotClaim_StaleWhenASlotChanged() {
+        table.placeCard(3, 0);
+        table.placeCard(5, 1);
+        table.placeToken(0, 0);
+        table.placeToken(0, 1);
+        int[] slots = {0, 1};
+        int[] versions = {table.version(0), table.version(1)};
+        int[] cards = new int[2];
+
+        assertTrue(table.snapshotClaim(0, slots, versions, cards));
+        assertEquals(3, cards[0]);
+        assertEquals(5, cards[1]);
+
+        // the card in slot 1 is replaced and the player puts its token back on the new card
+        table.removeCard(1);
+        table.placeCard(7, 1);
+        table.placeToken(0, 1);
+        assertFalse(table.snapshotClaim(0, slots, versions, cards));
+        assertTrue(table.snapshotClaim(0, slots, cards));
+    }
+
+    @Test
+    void sets_IndexFollowsPlacedAndRemovedCards() {
+        Properties properties = new Properties();
+        properties.put("TableDelaySeconds", "0");
+        MockLogger logger = new MockLogger();
+        Config config = new Config(logger, properties);
+        Table table = new Table(new Env(logger, config, new MockUserInterface(), new UtilImpl(config)));
+
+        table.placeCard(0, 0);  // 0000
+        table.placeCard(1, 1);  // 0001
+        table.placeCard(5, 2);  // 0012
+        assertFalse(table.hasSets());
+
+        table.placeCard(2, 3);  // 0002 completes 0000, 0001
+        table.placeCard(6, 4);  // 0020 completes 0001, 0012
+        assertTrue(table.hasSets());
+        assertEquals(2, table.sets().size());
+
+        table.removeCard(1);
+        assertFalse(table.hasSets());
+    }
+
     static class MockUserInterface implements UserInterface {
         @Override
         public void dispose() {}
@@ -138,11 +265,31 @@ class TableTest {
             return false;
         }
 
+        @Override
+        public int completeSet(int a, int b) {
+            return -1;
+        }
+
         @Override
         public List<int[]> findSets(List<Integer> deck, int count) {
             return null;
         }
 
+        @Override
+        public List<int[]> findSets(int[] cards, int length, int count) {
+            return null;
+        }
+
+        @Override
+        public boolean containsSet(int[] cards, int length) {
+            return false;
+        }
+
+        @Override
+        public boolean containsSet(BitSet cards) {
+            return false;
+        }
+
         @Override
         public void spin() {}
     }